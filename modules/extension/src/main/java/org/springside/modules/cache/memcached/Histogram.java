@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 参照HdrHistogram思路实现的低开销直方图, 用于记录延时(微秒)与Value大小(字节)的分布.
+ *
+ * 按2的幂分段, 每段再线性分为16个桶, 相对误差约6%. 记录操作只有几次无锁的原子累加, 不分配对象,
+ * 可以在每次Memcached操作上调用. 百分位统计在snapshot()返回的快照上计算.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个数值, 负数按0处理.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax = max.get();
+		while ((value > currentMax) && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * 清空已记录的数据, 与并发的record()之间不保证原子性.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * 复制当前数据生成快照, 百分位在快照上计算, 不影响记录线程.
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = buckets.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sum.get(), max.get());
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return SUB_BUCKET_COUNT + (shift * SUB_BUCKET_COUNT) + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * 直方图的不可变快照.
+	 */
+	public static class Snapshot {
+
+		private final long[] buckets;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] buckets, long count, long sum, long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * 返回百分位数值, 如percentile(99.9), 结果为所在桶的上界且不超过最大值.
+		 */
+		public long percentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil((percentile / 100) * count));
+			long accumulated = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				accumulated += buckets[i];
+				if (accumulated >= target) {
+					return Math.min(bucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d, mean=%.1f, p50=%d, p99=%d, p999=%d, max=%d", count, getMean(),
+					percentile(50), percentile(99), percentile(99.9), max);
+		}
+	}
+}
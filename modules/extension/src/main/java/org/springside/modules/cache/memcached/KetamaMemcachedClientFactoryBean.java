@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import net.spy.memcached.AddrUtil;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.ConnectionFactoryBuilder.Locator;
+import net.spy.memcached.ConnectionFactoryBuilder.Protocol;
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.FailureMode;
+import net.spy.memcached.MemcachedClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * 多节点Memcached集群的MemcachedClient工厂, 固定使用Ketama一致性哈希环定位节点.
+ *
+ * 节点增减时只有环上相邻区段的Key会迁移. 默认FailureMode为Redistribute, 节点失效后其Key被重新分配到环上的下一个节点,
+ * 配合SpyMemcachedClient的热点Key复制可避免单节点故障或单个热点Key拖垮整个集群.
+ *
+ * 返回的MemcachedClient由SpyMemcachedClient的destroy()负责关闭.
+ */
+public class KetamaMemcachedClientFactoryBean implements FactoryBean<MemcachedClient>, InitializingBean {
+
+	private static Logger logger = LoggerFactory.getLogger(KetamaMemcachedClientFactoryBean.class);
+
+	private MemcachedClient memcachedClient;
+
+	private String servers;
+
+	private Protocol protocol = Protocol.TEXT;
+
+	private long opTimeout = 1000;
+
+	private FailureMode failureMode = FailureMode.Redistribute;
+
+	private long maxReconnectDelay = 30;
+
+	private int timeoutExceptionThreshold = 998;
+
+	private boolean daemon = true;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.hasText(servers, "servers cannot be empty");
+
+		ConnectionFactoryBuilder builder = new ConnectionFactoryBuilder();
+		builder.setLocatorType(Locator.CONSISTENT).setHashAlg(DefaultHashAlgorithm.KETAMA_HASH);
+		builder.setProtocol(protocol).setOpTimeout(opTimeout).setFailureMode(failureMode);
+		builder.setMaxReconnectDelay(maxReconnectDelay).setTimeoutExceptionThreshold(timeoutExceptionThreshold);
+		builder.setDaemon(daemon);
+
+		logger.info("Initializing ketama memcached client with servers: " + servers);
+		memcachedClient = new MemcachedClient(builder.build(), AddrUtil.getAddresses(servers));
+	}
+
+	@Override
+	public MemcachedClient getObject() throws Exception {
+		return memcachedClient;
+	}
+
+	@Override
+	public Class<MemcachedClient> getObjectType() {
+		return MemcachedClient.class;
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return true;
+	}
+
+	/**
+	 * 以空格或逗号分隔的节点列表, 如"host1:11211 host2:11211".
+	 */
+	public void setServers(String servers) {
+		this.servers = servers;
+	}
+
+	public void setProtocol(Protocol protocol) {
+		this.protocol = protocol;
+	}
+
+	public void setOpTimeout(long opTimeout) {
+		this.opTimeout = opTimeout;
+	}
+
+	public void setFailureMode(FailureMode failureMode) {
+		this.failureMode = failureMode;
+	}
+
+	/**
+	 * 失效节点的最大重连间隔, 单位为秒.
+	 */
+	public void setMaxReconnectDelay(long maxReconnectDelay) {
+		this.maxReconnectDelay = maxReconnectDelay;
+	}
+
+	/**
+	 * 连续超时多少次后认为节点失效并断开重连.
+	 */
+	public void setTimeoutExceptionThreshold(int timeoutExceptionThreshold) {
+		this.timeoutExceptionThreshold = timeoutExceptionThreshold;
+	}
+
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * 基于SpyMemcachedClient.incr的分布式计数器, 在本地聚合增量后定期批量写入Memcached.
+ *
+ * 每个Key在本地对应一个分段计数器(按线程分段并做缓存行填充, 效果等同于JDK8的LongAdder), 高并发下累加无竞争.
+ * 后台线程每隔flushInterval毫秒将各Key的增量取出并合并为一次incr, 热点计数器每个周期只产生一次网络操作.
+ * 写入失败(异常或返回-1)的增量会退回本地并计入getFlushFailures(), 在下个周期重试. destroy()时停止定时任务并做最后一次flush.
+ *
+ * 读取到的Memcached中的值最多落后一个flushInterval周期, 适用于PV, 频率统计等可容忍短暂延迟的计数.
+ * 一个周期内没有增量的Key会被移出本地: 移出前先将计数器作废, 作废后的计数器拒绝累加, 累加的线程改用新的计数器重试, 增量不会丢失.
+ */
+public class MemcachedCounters implements InitializingBean, DisposableBean {
+
+	private static Logger logger = LoggerFactory.getLogger(MemcachedCounters.class);
+
+	private SpyMemcachedClient spyMemcachedClient;
+
+	private long flushInterval = 1000;
+
+	private ConcurrentMap<String, StripedCounter> counters = new ConcurrentHashMap<String, StripedCounter>();
+
+	private ScheduledExecutorService scheduler;
+
+	private final AtomicLong flushFailures = new AtomicLong();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "memcached-counters-flusher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					logger.warn("flush memcached counters failed", e);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+		}
+		flush();
+	}
+
+	/**
+	 * 计数器加1.
+	 */
+	public void increment(String key) {
+		increment(key, 1);
+	}
+
+	/**
+	 * 计数器增加delta, 只在本地累加, 不产生网络操作.
+	 */
+	public void increment(String key, long delta) {
+		while (true) {
+			StripedCounter counter = counters.get(key);
+			if (counter == null) {
+				StripedCounter newCounter = new StripedCounter();
+				counter = counters.putIfAbsent(key, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+			if (counter.add(delta)) {
+				return;
+			}
+			// 计数器已被flush作废, 协助移出后在新的计数器上重试.
+			counters.remove(key, counter);
+		}
+	}
+
+	/**
+	 * 返回本地尚未写入Memcached的增量.
+	 */
+	public long getPending(String key) {
+		StripedCounter counter = counters.get(key);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * 返回写入Memcached失败并退回本地重试的次数.
+	 */
+	public long getFlushFailures() {
+		return flushFailures.get();
+	}
+
+	/**
+	 * 将所有Key的本地增量写入Memcached, 每个Key一次incr操作.
+	 */
+	public synchronized void flush() {
+		for (Map.Entry<String, StripedCounter> entry : counters.entrySet()) {
+			String key = entry.getKey();
+			StripedCounter counter = entry.getValue();
+
+			long delta = counter.sumThenReset();
+			if (delta == 0) {
+				// 空闲的Key先作废再移出本地, 作废前并发累加的增量由retire()取回, 之后的累加会改用新的计数器.
+				delta = counter.retire();
+				counters.remove(key, counter);
+				if (delta == 0) {
+					continue;
+				}
+			}
+			flushDelta(key, delta);
+		}
+	}
+
+	private void flushDelta(String key, long delta) {
+		// incr的步长为int且不支持负数, 超出范围时拆分为多次incr/decr.
+		long remaining = delta;
+		while (remaining != 0) {
+			int step = (int) Math.max(Math.min(remaining, Integer.MAX_VALUE), -Integer.MAX_VALUE);
+			if (!mutate(key, step)) {
+				flushFailures.incrementAndGet();
+				increment(key, remaining);
+				return;
+			}
+			remaining -= step;
+		}
+	}
+
+	/**
+	 * 带默认值的incr/decr在Key不存在(含被淘汰)时会先以add初始化, 仍返回-1说明操作超时或出错, 与异常一样视为失败.
+	 */
+	private boolean mutate(String key, int step) {
+		try {
+			long result = (step > 0) ? spyMemcachedClient.incr(key, step, step) : spyMemcachedClient.decr(key,
+					-step, 0);
+			if (result == -1) {
+				logger.warn("flush memcached counter failed with key:" + key + ", delta:" + step + ", memcached returned -1");
+				return false;
+			}
+			return true;
+		} catch (RuntimeException e) {
+			logger.warn("flush memcached counter failed with key:" + key + ", delta:" + step, e);
+			return false;
+		}
+	}
+
+	public void setSpyMemcachedClient(SpyMemcachedClient spyMemcachedClient) {
+		this.spyMemcachedClient = spyMemcachedClient;
+	}
+
+	/**
+	 * 写入Memcached的间隔, 单位为毫秒, 默认为1000.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * 按线程分段的计数器, 每段之间间隔一个缓存行避免伪共享.
+	 * 作废后每段被置为RETIRED标记值, add()以CAS累加, 遇到标记值即失败, 保证作废后的累加不会被静默丢弃.
+	 */
+	static class StripedCounter {
+
+		private static final long RETIRED = Long.MIN_VALUE;
+		private static final int PADDING = 8;
+		private static final int STRIPES = stripes();
+
+		private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+		private static int stripes() {
+			int stripes = 1;
+			while (stripes < Runtime.getRuntime().availableProcessors()) {
+				stripes <<= 1;
+			}
+			return stripes;
+		}
+
+		/**
+		 * 累加delta, 计数器已作废时返回false.
+		 */
+		boolean add(long delta) {
+			int index = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+			while (true) {
+				long current = cells.get(index);
+				if (current == RETIRED) {
+					return false;
+				}
+				if (cells.compareAndSet(index, current, current + delta)) {
+					return true;
+				}
+			}
+		}
+
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				long value = cells.get(i * PADDING);
+				if (value != RETIRED) {
+					sum += value;
+				}
+			}
+			return sum;
+		}
+
+		/**
+		 * 作废计数器, 返回作废前尚未取出的增量.
+		 */
+		long retire() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				long value = cells.getAndSet(i * PADDING, RETIRED);
+				if (value != RETIRED) {
+					sum += value;
+				}
+			}
+			return sum;
+		}
+
+		long sumThenReset() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += cells.getAndSet(i * PADDING, 0);
+			}
+			return sum;
+		}
+	}
+}
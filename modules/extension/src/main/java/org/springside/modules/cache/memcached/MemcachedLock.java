@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.spy.memcached.CASValue;
+
+import org.springframework.util.Assert;
+import org.springside.modules.utils.Threads;
+
+/**
+ * 基于Memcached add/gets/cas实现的租约式分布式锁, 适用于报表生成等耗时任务的跨节点短时互斥.
+ *
+ * 加锁时以随机token执行add, Key已存在则失败; 租约到期后Key自动过期, 持有者宕机也不会造成死锁.
+ * 任务执行时间可能超过租约时, 持有者应在租约内调用renew()以cas方式续约.
+ *
+ * Memcached没有按值删除的原子操作, 解锁时先gets核对token, 再以cas将Key覆盖为短期过期的墓碑值代替删除:
+ * 若租约在核对之后到期并被其他节点获得, cas因版本号变化而失败, 不会误释放他人的锁. 加锁时遇到墓碑值同样以cas占有.
+ *
+ * 本地快速通道: 同一实例已被本JVM持有且本地记录的租约未到期时, tryLock()直接返回false, 不访问Memcached;
+ * 租约到期后tryLock()会核对Memcached, 锁已丢失时清理本地状态并重新竞争.
+ */
+public class MemcachedLock {
+
+	private static final long RETRY_INTERVAL_MILLIS = 50;
+
+	private static final String RELEASED = "released";
+
+	private static final int RELEASED_SECONDS = 1;
+
+	private final SpyMemcachedClient spyMemcachedClient;
+
+	private final String key;
+
+	private final int leaseSeconds;
+
+	private final AtomicReference<String> token = new AtomicReference<String>();
+
+	private volatile long leaseExpireAt;
+
+	public MemcachedLock(SpyMemcachedClient spyMemcachedClient, String name, int leaseSeconds) {
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+		Assert.hasText(name, "name cannot be empty");
+		Assert.isTrue(leaseSeconds > 0, "leaseSeconds must be positive");
+
+		this.spyMemcachedClient = spyMemcachedClient;
+		this.key = "lock:" + name;
+		this.leaseSeconds = leaseSeconds;
+	}
+
+	/**
+	 * 尝试获取锁, 立即返回是否成功.
+	 */
+	public boolean tryLock() {
+		String current = token.get();
+		if (current != null) {
+			if (System.currentTimeMillis() < leaseExpireAt) {
+				return false;
+			}
+			// 本地记录的租约已到期, 锁仍属于自己时不重复加锁, 否则清理本地状态后重新竞争.
+			CASValue<Object> value = spyMemcachedClient.gets(key);
+			if ((value != null) && current.equals(value.getValue())) {
+				return false;
+			}
+			token.compareAndSet(current, null);
+		}
+
+		String newToken = UUID.randomUUID().toString();
+		if (!token.compareAndSet(null, newToken)) {
+			return false;
+		}
+
+		leaseExpireAt = System.currentTimeMillis() + (leaseSeconds * 1000L);
+		if (acquire(newToken)) {
+			return true;
+		}
+		token.compareAndSet(newToken, null);
+		return false;
+	}
+
+	private boolean acquire(String newToken) {
+		if (spyMemcachedClient.safeAdd(key, leaseSeconds, newToken)) {
+			return true;
+		}
+
+		// 上一个持有者解锁后留下的墓碑值尚未过期, 以cas占有.
+		CASValue<Object> value = spyMemcachedClient.gets(key);
+		return (value != null) && RELEASED.equals(value.getValue())
+				&& spyMemcachedClient.cas(key, value.getCas(), leaseSeconds, newToken);
+	}
+
+	/**
+	 * 在timeout时间内重试获取锁.
+	 */
+	public boolean tryLock(long timeout, TimeUnit unit) {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (true) {
+			if (tryLock()) {
+				return true;
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			Threads.sleep(RETRY_INTERVAL_MILLIS);
+		}
+	}
+
+	/**
+	 * 以cas方式将租约延长为leaseSeconds, 返回false表示锁已丢失(租约已过期或被他人持有).
+	 */
+	public boolean renew() {
+		String current = token.get();
+		if (current == null) {
+			return false;
+		}
+
+		long expireAt = System.currentTimeMillis() + (leaseSeconds * 1000L);
+		CASValue<Object> value = spyMemcachedClient.gets(key);
+		if ((value == null) || !current.equals(value.getValue())) {
+			token.compareAndSet(current, null);
+			return false;
+		}
+		if (spyMemcachedClient.cas(key, value.getCas(), leaseSeconds, current)) {
+			leaseExpireAt = expireAt;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 释放自己持有的锁, 若锁已过期或被他人持有则只清理本地状态.
+	 */
+	public void unlock() {
+		String current = token.getAndSet(null);
+		if (current == null) {
+			return;
+		}
+
+		CASValue<Object> value = spyMemcachedClient.gets(key);
+		if ((value != null) && current.equals(value.getValue())) {
+			spyMemcachedClient.cas(key, value.getCas(), RELEASED_SECONDS, RELEASED);
+		}
+	}
+
+	/**
+	 * 本实例当前是否持有锁(仅本地状态, 不检查租约是否已过期).
+	 */
+	public boolean isHeldLocally() {
+		return token.get() != null;
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * SpyMemcachedClient的监控统计, 记录各操作的延时分布, 命中/未命中/超时/异常次数, 以及读写Value的大小分布.
+ *
+ * 注入SpyMemcachedClient的metrics属性后生效, 未注入时无任何开销.
+ * 可通过snapshot()定时拉取, 或由Spring的MBeanExporter(配合AnnotationMBeanExporter或MetadataMBeanInfoAssembler)暴露为JMX MBean.
+ *
+ * 延时单位为微秒, 大小单位为字节. 异步的set/delete不等待结果, 只计次数不计延时.
+ */
+@ManagedResource(description = "Memcached client metrics")
+public class MemcachedMetrics {
+
+	/**
+	 * 统计的操作类型.
+	 */
+	public enum Operation {
+		GET, GET_BULK, SET, ADD, DELETE, INCR, DECR, CAS
+	}
+
+	private final Map<Operation, Histogram> latencies = new EnumMap<Operation, Histogram>(Operation.class);
+	private final Map<Operation, AtomicLong> calls = new EnumMap<Operation, AtomicLong>(Operation.class);
+
+	private final Histogram readValueSizes = new Histogram();
+	private final Histogram writeValueSizes = new Histogram();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	public MemcachedMetrics() {
+		for (Operation operation : Operation.values()) {
+			latencies.put(operation, new Histogram());
+			calls.put(operation, new AtomicLong());
+		}
+	}
+
+	/**
+	 * 记录一次同步操作的延时, startNanos为System.nanoTime()取得的开始时间.
+	 */
+	public void recordLatency(Operation operation, long startNanos) {
+		latencies.get(operation).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+	}
+
+	/**
+	 * 记录一次发往Memcached的操作, 热点Key的每个副本各计一次.
+	 */
+	public void recordCall(Operation operation) {
+		calls.get(operation).incrementAndGet();
+	}
+
+	public void recordHits(long count) {
+		hits.addAndGet(count);
+	}
+
+	public void recordMisses(long count) {
+		misses.addAndGet(count);
+	}
+
+	public void recordTimeout() {
+		timeouts.incrementAndGet();
+	}
+
+	public void recordError() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * 包装原有的Transcoder, 在编解码时记录Value序列化后的字节数, 不产生额外的序列化开销.
+	 */
+	public Transcoder<Object> measure(final Transcoder<Object> transcoder) {
+		return new Transcoder<Object>() {
+			@Override
+			public boolean asyncDecode(CachedData d) {
+				return transcoder.asyncDecode(d);
+			}
+
+			@Override
+			public CachedData encode(Object o) {
+				CachedData data = transcoder.encode(o);
+				writeValueSizes.record(data.getData().length);
+				return data;
+			}
+
+			@Override
+			public Object decode(CachedData d) {
+				readValueSizes.record(d.getData().length);
+				return transcoder.decode(d);
+			}
+
+			@Override
+			public int getMaxSize() {
+				return transcoder.getMaxSize();
+			}
+		};
+	}
+
+	/**
+	 * 返回当前统计数据的快照.
+	 */
+	public Snapshot snapshot() {
+		Map<Operation, Histogram.Snapshot> latencySnapshots = new EnumMap<Operation, Histogram.Snapshot>(
+				Operation.class);
+		Map<Operation, Long> callCounts = new EnumMap<Operation, Long>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			latencySnapshots.put(operation, latencies.get(operation).snapshot());
+			callCounts.put(operation, calls.get(operation).get());
+		}
+		return new Snapshot(latencySnapshots, callCounts, readValueSizes.snapshot(), writeValueSizes.snapshot(),
+				hits.get(), misses.get(), timeouts.get(), errors.get());
+	}
+
+	@ManagedOperation(description = "Reset all counters and histograms")
+	public void reset() {
+		for (Operation operation : Operation.values()) {
+			latencies.get(operation).reset();
+			calls.get(operation).set(0);
+		}
+		readValueSizes.reset();
+		writeValueSizes.reset();
+		hits.set(0);
+		misses.set(0);
+		timeouts.set(0);
+		errors.set(0);
+	}
+
+	@ManagedAttribute(description = "Cache hit count")
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@ManagedAttribute(description = "Cache miss count")
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@ManagedAttribute(description = "Cache hit ratio")
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@ManagedAttribute(description = "Operation timeout count")
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	@ManagedAttribute(description = "Operation error count")
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	@ManagedAttribute(description = "Get latency summary in microseconds")
+	public String getGetLatency() {
+		return latencies.get(Operation.GET).snapshot().toString();
+	}
+
+	@ManagedAttribute(description = "Get bulk latency summary in microseconds")
+	public String getGetBulkLatency() {
+		return latencies.get(Operation.GET_BULK).snapshot().toString();
+	}
+
+	@ManagedAttribute(description = "Safe set latency summary in microseconds")
+	public String getSetLatency() {
+		return latencies.get(Operation.SET).snapshot().toString();
+	}
+
+	@ManagedAttribute(description = "Read value size summary in bytes")
+	public String getReadValueSize() {
+		return readValueSizes.snapshot().toString();
+	}
+
+	@ManagedAttribute(description = "Write value size summary in bytes")
+	public String getWriteValueSize() {
+		return writeValueSizes.snapshot().toString();
+	}
+
+	/**
+	 * 统计数据的不可变快照.
+	 */
+	public static class Snapshot {
+
+		private final Map<Operation, Histogram.Snapshot> latencies;
+		private final Map<Operation, Long> calls;
+		private final Histogram.Snapshot readValueSizes;
+		private final Histogram.Snapshot writeValueSizes;
+		private final long hits;
+		private final long misses;
+		private final long timeouts;
+		private final long errors;
+
+		Snapshot(Map<Operation, Histogram.Snapshot> latencies, Map<Operation, Long> calls,
+				Histogram.Snapshot readValueSizes, Histogram.Snapshot writeValueSizes, long hits, long misses,
+				long timeouts, long errors) {
+			this.latencies = latencies;
+			this.calls = calls;
+			this.readValueSizes = readValueSizes;
+			this.writeValueSizes = writeValueSizes;
+			this.hits = hits;
+			this.misses = misses;
+			this.timeouts = timeouts;
+			this.errors = errors;
+		}
+
+		public Histogram.Snapshot getLatency(Operation operation) {
+			return latencies.get(operation);
+		}
+
+		public long getCalls(Operation operation) {
+			return calls.get(operation);
+		}
+
+		public Histogram.Snapshot getReadValueSizes() {
+			return readValueSizes;
+		}
+
+		public Histogram.Snapshot getWriteValueSizes() {
+			return writeValueSizes;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public double getHitRatio() {
+			long total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+	}
+}
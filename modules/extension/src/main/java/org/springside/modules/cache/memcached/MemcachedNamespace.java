@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 基于版本号的命名空间, 用于批量失效一族Key(如某个租户的全部缓存), 无需枚举Key, 也无需flush_all.
+ *
+ * 每个命名空间在Memcached中保存一个版本号, 业务Key拼接为"命名空间@版本号:Key". invalidate()只需incr一次版本号,
+ * 旧版本的Key不再被访问, 由Memcached的LRU与过期时间自然淘汰.
+ *
+ * 版本号在本地缓存localTtlMillis毫秒, 绝大多数请求不产生额外的网络操作; 代价是其他节点最多延迟localTtlMillis才看到失效.
+ * 版本号Key不设过期时间, 若被LRU淘汰, 会以当前毫秒数重新初始化, 保证不会与旧版本号重复而读到过期数据.
+ */
+public class MemcachedNamespace {
+
+	private static Logger logger = LoggerFactory.getLogger(MemcachedNamespace.class);
+
+	private static final String GENERATION_KEY_PREFIX = "ns:";
+
+	private final SpyMemcachedClient spyMemcachedClient;
+
+	private long localTtlMillis = 1000;
+
+	private ConcurrentMap<String, CachedGeneration> generations = new ConcurrentHashMap<String, CachedGeneration>();
+
+	public MemcachedNamespace(SpyMemcachedClient spyMemcachedClient) {
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+		this.spyMemcachedClient = spyMemcachedClient;
+	}
+
+	/**
+	 * 返回命名空间内的实际Key, 如key("tenant:42", "orders")返回"tenant:42@1386000000000:orders".
+	 */
+	public String key(String namespace, String key) {
+		return prefix(namespace) + key;
+	}
+
+	/**
+	 * 返回命名空间当前版本的Key前缀.
+	 */
+	public String prefix(String namespace) {
+		return namespace + "@" + getGeneration(namespace) + ":";
+	}
+
+	/**
+	 * 返回命名空间当前的版本号, 本地缓存未过期时不访问Memcached.
+	 */
+	public long getGeneration(String namespace) {
+		CachedGeneration cached = generations.get(namespace);
+		long now = System.currentTimeMillis();
+		if ((cached != null) && (now < cached.expireAt)) {
+			return cached.generation;
+		}
+
+		try {
+			// incr 0在Key不存在时以当前毫秒数原子地初始化版本号.
+			long generation = spyMemcachedClient.incr(GENERATION_KEY_PREFIX + namespace, 0, now, 0);
+			generations.put(namespace, new CachedGeneration(generation, now + localTtlMillis));
+			return generation;
+		} catch (RuntimeException e) {
+			logger.warn("read generation of namespace " + namespace + " failed", e);
+			// 读取失败时沿用过期的本地版本号, 没有本地版本号时使用一个不会命中的临时版本号.
+			return cached != null ? cached.generation : -now;
+		}
+	}
+
+	/**
+	 * 失效整个命名空间, 本节点立即生效, 其他节点最多延迟localTtlMillis生效.
+	 */
+	public void invalidate(String namespace) {
+		long now = System.currentTimeMillis();
+		long generation = spyMemcachedClient.incr(GENERATION_KEY_PREFIX + namespace, 1, now, 0);
+		generations.put(namespace, new CachedGeneration(generation, now + localTtlMillis));
+	}
+
+	/**
+	 * 版本号的本地缓存时间, 单位为毫秒, 默认为1000.
+	 */
+	public void setLocalTtlMillis(long localTtlMillis) {
+		this.localTtlMillis = localTtlMillis;
+	}
+
+	private static class CachedGeneration {
+
+		final long generation;
+		final long expireAt;
+
+		CachedGeneration(long generation, long expireAt) {
+			this.generation = generation;
+			this.expireAt = expireAt;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 基于Memcached incr实现的跨节点限流器, 限制每windowSeconds秒内全集群最多通过limit个请求.
+ *
+ * 采用滑动窗口近似算法: 当前窗口计数 + 上一窗口计数 * 上一窗口在滑动窗口中的剩余比例 <= limit 时放行,
+ * 避免固定窗口在边界处放行两倍流量. 上一窗口的计数在进入新窗口时读取一次并缓存.
+ *
+ * 本地快速通道: 每次incr一次向集群预占batchSize个配额, 之后的请求在本地扣减, 配额用完才再访问Memcached;
+ * 当前窗口的全局配额耗尽后本地直接拒绝, 直到下一个窗口. batchSize越大网络操作越少, 但各节点预占未用的配额会使限流略为提前.
+ *
+ * Memcached不可用时默认放行(failOpen), 避免缓存故障扩散为业务故障.
+ */
+public class MemcachedRateLimiter {
+
+	private static Logger logger = LoggerFactory.getLogger(MemcachedRateLimiter.class);
+
+	private final SpyMemcachedClient spyMemcachedClient;
+
+	private final String name;
+
+	private final int limit;
+
+	private final long windowMillis;
+
+	private int batchSize = 1;
+
+	private boolean failOpen = true;
+
+	private volatile Window window;
+
+	public MemcachedRateLimiter(SpyMemcachedClient spyMemcachedClient, String name, int limit, int windowSeconds) {
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+		Assert.hasText(name, "name cannot be empty");
+		Assert.isTrue(limit > 0, "limit must be positive");
+		Assert.isTrue(windowSeconds > 0, "windowSeconds must be positive");
+
+		this.spyMemcachedClient = spyMemcachedClient;
+		this.name = name;
+		this.limit = limit;
+		this.windowMillis = windowSeconds * 1000L;
+	}
+
+	/**
+	 * 尝试获取一个许可, 立即返回是否放行.
+	 */
+	public boolean tryAcquire() {
+		long now = System.currentTimeMillis();
+		Window current = currentWindow(now);
+
+		if (current.exhausted) {
+			return false;
+		}
+		if (current.tryTakeLocal()) {
+			return true;
+		}
+		return reserve(current, now);
+	}
+
+	private Window currentWindow(long now) {
+		long windowId = now / windowMillis;
+		Window current = window;
+		if ((current != null) && (current.id == windowId)) {
+			return current;
+		}
+
+		synchronized (this) {
+			current = window;
+			if ((current == null) || (current.id != windowId)) {
+				current = new Window(windowId, readCount(windowId - 1));
+				window = current;
+			}
+			return current;
+		}
+	}
+
+	private boolean reserve(Window current, long now) {
+		synchronized (current) {
+			// 等待锁期间其他线程可能已经预占了新的配额.
+			if (current.exhausted) {
+				return false;
+			}
+			if (current.tryTakeLocal()) {
+				return true;
+			}
+
+			String key = windowKey(current.id);
+			long total;
+			try {
+				// 窗口Key保留两个窗口周期, 供下一个窗口计算滑动权重.
+				total = spyMemcachedClient.incr(key, batchSize, batchSize, (int) (windowMillis * 2 / 1000) + 1);
+			} catch (RuntimeException e) {
+				logger.warn("rate limiter " + name + " reserve failed, fail open:" + failOpen, e);
+				return failOpen;
+			}
+
+			double elapsed = (double) (now - (current.id * windowMillis)) / windowMillis;
+			long allowed = (long) (limit - (current.previousCount * (1 - elapsed)));
+			long before = total - batchSize;
+			long granted = Math.max(0, Math.min(batchSize, allowed - before));
+
+			// 归还未能放行的配额, 使窗口计数只反映真正放行的请求.
+			if (granted < batchSize) {
+				spyMemcachedClient.asyncDecr(key, (int) (batchSize - granted));
+			}
+
+			if (granted == 0) {
+				// 当前窗口计数已达上限时, 本窗口内不会再有配额; 仅因滑动权重拒绝时, 权重会随时间下降, 不标记耗尽.
+				if (before >= limit) {
+					current.exhausted = true;
+				}
+				return false;
+			}
+			current.localPermits.set((int) granted - 1);
+			return true;
+		}
+	}
+
+	private long readCount(long windowId) {
+		try {
+			Object value = spyMemcachedClient.get(windowKey(windowId));
+			return value == null ? 0 : Long.parseLong(StringUtils.trim(value.toString()));
+		} catch (RuntimeException e) {
+			logger.warn("rate limiter " + name + " read previous window failed", e);
+			return 0;
+		}
+	}
+
+	private String windowKey(long windowId) {
+		return "ratelimit:" + name + ":" + windowId;
+	}
+
+	/**
+	 * 每次向集群预占的配额数, 默认为1即每个请求都访问Memcached, 结果精确.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Memcached出错时是否放行, 默认为true.
+	 */
+	public void setFailOpen(boolean failOpen) {
+		this.failOpen = failOpen;
+	}
+
+	/**
+	 * 本地缓存的窗口状态.
+	 */
+	private static class Window {
+
+		final long id;
+		final long previousCount;
+		final AtomicInteger localPermits = new AtomicInteger();
+		volatile boolean exhausted;
+
+		Window(long id, long previousCount) {
+			this.id = id;
+			this.previousCount = previousCount;
+		}
+
+		boolean tryTakeLocal() {
+			int permits = localPermits.get();
+			while (permits > 0) {
+				if (localPermits.compareAndSet(permits, permits - 1)) {
+					return true;
+				}
+				permits = localPermits.get();
+			}
+			return false;
+		}
+	}
+}
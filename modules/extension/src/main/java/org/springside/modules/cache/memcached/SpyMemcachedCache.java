@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.util.Assert;
+import org.springside.modules.security.utils.Digests;
+import org.springside.modules.utils.Encodes;
+import org.springside.modules.utils.Threads;
+
+/**
+ * 基于SpyMemcachedClient的Spring Cache实现, 由SpyMemcachedCacheManager创建.
+ *
+ * Memcached中的Key为"命名空间前缀+缓存名:业务Key", UTF-8编码后超过250字节(需为锁Key的后缀预留空间)或含空白字符的Key转为SHA1摘要.
+ * put/evict使用不等待结果的异步set/delete; get/getAll经由SpyMemcachedClient, 可享用热点Key复制与监控统计.
+ * spymemcached的同步get/getBulk即是asyncGet/asyncGetBulk加客户端的operationTimeout, 超时时取消请求并按未命中返回, 不会无限阻塞.
+ * 缓存null值时以NullValue占位, 与未命中区分.
+ *
+ * Memcached无法枚举Key, Key前缀总是带上缓存在MemcachedNamespace中的版本号, clear()通过递增版本号在O(1)内失效整个缓存.
+ * 未注入共享的MemcachedNamespace时按默认配置创建.
+ *
+ * 可选的防击穿(stampede)保护: 值按expiration软过期, 在Memcached中额外保留staleSeconds秒.
+ * 软过期或未命中时, 只有add锁成功的一个调用者得到未命中并重新计算, 其余调用者返回旧值,
+ * 或在未命中时短暂等待重算结果, 避免热点Key失效瞬间大量请求同时压向后端.
+ * 重算失败时调用者应evict该Key以释放重算锁, 等待中的调用者发现锁被释放后立即重新竞争重算权, 不必等到超时.
+ */
+public class SpyMemcachedCache implements Cache {
+
+	private static final int MAX_KEY_LENGTH = 250;
+
+	private static final String LOCK_SUFFIX = "#lock";
+
+	/**
+	 * Key需为锁Key的后缀预留空间, 该余量同样容纳SpyMemcachedClient热点Key副本的"#n"后缀.
+	 */
+	private static final int MAX_BASE_KEY_LENGTH = MAX_KEY_LENGTH - LOCK_SUFFIX.length();
+
+	private static final long STAMPEDE_POLL_MILLIS = 20;
+
+	private final String name;
+
+	private final SpyMemcachedClient spyMemcachedClient;
+
+	private final String keyPrefix;
+
+	private final int expiration;
+
+	private boolean stampedeProtection = false;
+
+	private int staleSeconds = 60;
+
+	private int stampedeLockSeconds = 10;
+
+	private long stampedeWaitMillis = 500;
+
+	private MemcachedNamespace namespace;
+
+	/**
+	 * @param keyPrefix 命名空间前缀, 可为空字符串.
+	 * @param expiration 过期时间, 单位为秒, 0为不过期.
+	 */
+	public SpyMemcachedCache(String name, SpyMemcachedClient spyMemcachedClient, String keyPrefix, int expiration) {
+		Assert.hasText(name, "name cannot be empty");
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+
+		this.name = name;
+		this.spyMemcachedClient = spyMemcachedClient;
+		this.keyPrefix = StringUtils.defaultString(keyPrefix) + name + ":";
+		this.expiration = expiration;
+		this.namespace = new MemcachedNamespace(spyMemcachedClient);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public SpyMemcachedClient getNativeCache() {
+		return spyMemcachedClient;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		String memcachedKey = memcachedKey(key);
+		Object stored = spyMemcachedClient.get(memcachedKey);
+
+		if (!stampedeProtection) {
+			return toValueWrapper(stored);
+		}
+
+		if (stored == null) {
+			return waitForRecompute(memcachedKey);
+		}
+		if ((stored instanceof CacheEntry) && ((CacheEntry) stored).isSoftExpired()
+				&& spyMemcachedClient.safeAdd(lockKey(memcachedKey), stampedeLockSeconds, Boolean.TRUE)) {
+			// 抢到重算权, 返回未命中由调用者重新计算, 其他调用者继续使用旧值.
+			return null;
+		}
+		return toValueWrapper(stored);
+	}
+
+	/**
+	 * 批量读取, 一次getBulk取回所有Key, 返回的Map以业务Key为键, 不含未命中的Key.
+	 */
+	public Map<Object, Object> getAll(Collection<?> keys) {
+		Map<String, Object> memcachedKeys = new HashMap<String, Object>(keys.size());
+		for (Object key : keys) {
+			memcachedKeys.put(memcachedKey(key), key);
+		}
+
+		Map<Object, Object> result = new HashMap<Object, Object>(keys.size());
+		Map<String, Object> values = spyMemcachedClient.getBulk(memcachedKeys.keySet());
+		if (values != null) {
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				result.put(memcachedKeys.get(entry.getKey()), toValueWrapper(entry.getValue()).get());
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		String memcachedKey = memcachedKey(key);
+		Object stored = (value == null) ? NullValue.INSTANCE : value;
+
+		if (!stampedeProtection) {
+			spyMemcachedClient.set(memcachedKey, expiration, stored);
+			return;
+		}
+
+		long softExpireAt = expiration == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + (expiration * 1000L);
+		int hardExpiration = expiration == 0 ? 0 : expiration + staleSeconds;
+		spyMemcachedClient.set(memcachedKey, hardExpiration, new CacheEntry(stored, softExpireAt));
+		spyMemcachedClient.delete(lockKey(memcachedKey));
+	}
+
+	/**
+	 * 删除缓存值, 开启防击穿保护时同时释放重算锁.
+	 */
+	@Override
+	public void evict(Object key) {
+		String memcachedKey = memcachedKey(key);
+		spyMemcachedClient.delete(memcachedKey);
+		if (stampedeProtection) {
+			spyMemcachedClient.delete(lockKey(memcachedKey));
+		}
+	}
+
+	/**
+	 * 递增缓存的命名空间版本号, 使缓存中所有的Key失效.
+	 */
+	@Override
+	public void clear() {
+		namespace.invalidate(keyPrefix);
+	}
+
+	/**
+	 * 未命中时只有一个调用者获得重算权, 其余调用者在stampedeWaitMillis内轮询重算结果, 超时后也返回未命中.
+	 * 轮询时发现锁已释放而值仍不存在(持有者重算失败并evict), 立即重新竞争重算权.
+	 */
+	private ValueWrapper waitForRecompute(String memcachedKey) {
+		String lockKey = lockKey(memcachedKey);
+		if (spyMemcachedClient.safeAdd(lockKey, stampedeLockSeconds, Boolean.TRUE)) {
+			return null;
+		}
+
+		List<String> keys = Arrays.asList(memcachedKey, lockKey);
+		long deadline = System.currentTimeMillis() + stampedeWaitMillis;
+		while (System.currentTimeMillis() < deadline) {
+			Threads.sleep(STAMPEDE_POLL_MILLIS);
+			Map<String, Object> values = spyMemcachedClient.getBulk(keys);
+			if (values == null) {
+				continue;
+			}
+			Object stored = values.get(memcachedKey);
+			if (stored != null) {
+				return toValueWrapper(stored);
+			}
+			if (!values.containsKey(lockKey)
+					&& spyMemcachedClient.safeAdd(lockKey, stampedeLockSeconds, Boolean.TRUE)) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private ValueWrapper toValueWrapper(Object stored) {
+		if (stored == null) {
+			return null;
+		}
+		Object value = (stored instanceof CacheEntry) ? ((CacheEntry) stored).value : stored;
+		return new SimpleValueWrapper(value == NullValue.INSTANCE ? null : value);
+	}
+
+	String memcachedKey(Object key) {
+		String prefix = namespace.prefix(keyPrefix);
+		String memcachedKey = prefix + key;
+		if (isValidKey(memcachedKey)) {
+			return memcachedKey;
+		}
+
+		memcachedKey = prefix + sha1Hex(String.valueOf(key));
+		if (isValidKey(memcachedKey)) {
+			return memcachedKey;
+		}
+		// 前缀本身过长或含空白字符时对整个Key取摘要, 前缀中的版本号仍参与摘要, clear()依然有效.
+		return sha1Hex(prefix + key);
+	}
+
+	private static boolean isValidKey(String memcachedKey) {
+		return (memcachedKey.getBytes(StandardCharsets.UTF_8).length <= MAX_BASE_KEY_LENGTH)
+				&& !StringUtils.containsAny(memcachedKey, " \t\r\n");
+	}
+
+	private static String sha1Hex(String value) {
+		return Encodes.encodeHex(Digests.sha1(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private String lockKey(String memcachedKey) {
+		return memcachedKey + LOCK_SUFFIX;
+	}
+
+	/**
+	 * 注入共享的MemcachedNamespace, 可自定义版本号的本地缓存时间.
+	 */
+	public void setNamespace(MemcachedNamespace namespace) {
+		Assert.notNull(namespace, "namespace cannot be null");
+		this.namespace = namespace;
+	}
+
+	/**
+	 * 是否开启防击穿保护, 开启后Memcached中的值格式不同, 不应与未开启的实例共享同一个缓存.
+	 */
+	public void setStampedeProtection(boolean stampedeProtection) {
+		this.stampedeProtection = stampedeProtection;
+	}
+
+	/**
+	 * 软过期后旧值继续保留的时间, 单位为秒.
+	 */
+	public void setStaleSeconds(int staleSeconds) {
+		this.staleSeconds = staleSeconds;
+	}
+
+	/**
+	 * 重算锁的租约, 应大于重新计算一个值的耗时, 单位为秒.
+	 */
+	public void setStampedeLockSeconds(int stampedeLockSeconds) {
+		this.stampedeLockSeconds = stampedeLockSeconds;
+	}
+
+	/**
+	 * 未命中时等待他人重算结果的最长时间, 单位为毫秒.
+	 */
+	public void setStampedeWaitMillis(long stampedeWaitMillis) {
+		this.stampedeWaitMillis = stampedeWaitMillis;
+	}
+
+	/**
+	 * 缓存null值时的占位对象.
+	 */
+	static final class NullValue implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		static final NullValue INSTANCE = new NullValue();
+
+		private Object readResolve() {
+			return INSTANCE;
+		}
+	}
+
+	/**
+	 * 开启防击穿保护时存入Memcached的值, 带软过期时间.
+	 */
+	static final class CacheEntry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final Object value;
+
+		final long softExpireAt;
+
+		CacheEntry(Object value, long softExpireAt) {
+			this.value = value;
+			this.softExpireAt = softExpireAt;
+		}
+
+		boolean isSoftExpired() {
+			return System.currentTimeMillis() >= softExpireAt;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2005-2012 springside.org.cn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ */
+package org.springside.modules.cache.memcached;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+import org.springframework.util.Assert;
+
+/**
+ * 基于SpyMemcachedClient的Spring CacheManager, 使@Cacheable等注解可直接使用Memcached.
+ *
+ * 每个缓存可在expires中单独设置过期时间(秒), 未设置的使用defaultExpiration.
+ * keyPrefix作为所有缓存Key的命名空间前缀, 使多个应用可以共享同一组Memcached节点.
+ * 未在cacheNames或expires中声明的缓存在首次使用时按默认配置创建.
+ * 各缓存的Key总是带命名空间版本号, 使@CacheEvict(allEntries = true)可用, 代价是每次读写多一次本地缓存的版本号查询.
+ *
+ * 配置示例:
+ * <pre>
+ * &lt;cache:annotation-driven cache-manager="cacheManager" /&gt;
+ * &lt;bean id="cacheManager" class="org.springside.modules.cache.memcached.SpyMemcachedCacheManager"&gt;
+ *     &lt;property name="spyMemcachedClient" ref="spyMemcachedClient" /&gt;
+ *     &lt;property name="keyPrefix" value="myapp:" /&gt;
+ *     &lt;property name="expires"&gt;&lt;map&gt;&lt;entry key="users" value="600" /&gt;&lt;/map&gt;&lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class SpyMemcachedCacheManager extends AbstractCacheManager {
+
+	private SpyMemcachedClient spyMemcachedClient;
+
+	private String keyPrefix = "";
+
+	private int defaultExpiration = 3600;
+
+	private Map<String, Integer> expires = Collections.emptyMap();
+
+	private Set<String> cacheNames = Collections.emptySet();
+
+	private boolean stampedeProtection = false;
+
+	private int staleSeconds = 60;
+
+	private MemcachedNamespace namespace;
+
+	@Override
+	protected Collection<? extends Cache> loadCaches() {
+		Assert.notNull(spyMemcachedClient, "spyMemcachedClient cannot be null");
+		if (namespace == null) {
+			namespace = new MemcachedNamespace(spyMemcachedClient);
+		}
+
+		Set<String> names = new LinkedHashSet<String>(cacheNames);
+		names.addAll(expires.keySet());
+
+		Collection<Cache> caches = new ArrayList<Cache>(names.size());
+		for (String name : names) {
+			caches.add(createCache(name));
+		}
+		return caches;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		Cache cache = super.getCache(name);
+		if (cache == null) {
+			synchronized (this) {
+				cache = super.getCache(name);
+				if (cache == null) {
+					cache = createCache(name);
+					addCache(cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	protected SpyMemcachedCache createCache(String name) {
+		Integer expiration = expires.get(name);
+		SpyMemcachedCache cache = new SpyMemcachedCache(name, spyMemcachedClient, keyPrefix,
+				expiration != null ? expiration : defaultExpiration);
+		cache.setStampedeProtection(stampedeProtection);
+		cache.setStaleSeconds(staleSeconds);
+		cache.setNamespace(namespace);
+		return cache;
+	}
+
+	public void setSpyMemcachedClient(SpyMemcachedClient spyMemcachedClient) {
+		this.spyMemcachedClient = spyMemcachedClient;
+	}
+
+	/**
+	 * 所有缓存Key的命名空间前缀, 如"myapp:".
+	 */
+	public void setKeyPrefix(String keyPrefix) {
+		this.keyPrefix = keyPrefix;
+	}
+
+	/**
+	 * 未单独设置过期时间的缓存使用的过期时间, 单位为秒, 默认为3600.
+	 */
+	public void setDefaultExpiration(int defaultExpiration) {
+		this.defaultExpiration = defaultExpiration;
+	}
+
+	/**
+	 * 按缓存名设置的过期时间, 单位为秒.
+	 */
+	public void setExpires(Map<String, Integer> expires) {
+		this.expires = expires;
+	}
+
+	public void setCacheNames(Collection<String> cacheNames) {
+		this.cacheNames = new LinkedHashSet<String>(cacheNames);
+	}
+
+	/**
+	 * 是否对所有缓存开启防击穿保护, 见{@link SpyMemcachedCache}.
+	 */
+	public void setStampedeProtection(boolean stampedeProtection) {
+		this.stampedeProtection = stampedeProtection;
+	}
+
+	public void setStaleSeconds(int staleSeconds) {
+		this.staleSeconds = staleSeconds;
+	}
+
+	/**
+	 * 注入共享的MemcachedNamespace, 可自定义版本号的本地缓存时间, 未设置时按默认配置创建.
+	 */
+	public void setNamespace(MemcachedNamespace namespace) {
+		this.namespace = namespace;
+	}
+}
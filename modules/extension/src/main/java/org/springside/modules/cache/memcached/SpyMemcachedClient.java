@@ -5,23 +5,47 @@
  */
 package org.springside.modules.cache.memcached;
 
+import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.MemcachedNode;
+import net.spy.memcached.NodeLocator;
+import net.spy.memcached.OperationTimeoutException;
+import net.spy.memcached.transcoders.Transcoder;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springside.modules.cache.memcached.MemcachedMetrics.Operation;
 
 /**
  * 对SpyMemcached Client的二次封装,提供常用的Get/GetBulk/Set/Delete/Incr/Decr函数的同步与异步操作封装.
  * 
  * 未提供封装的函数可直接调用getClient()取出Spy的原版MemcachedClient来使用.
  * 
+ * 支持热点Key复制: 被标记为热点的Key在Set/Delete时同时写入hotKeyReplicas个不同节点上的副本Key,
+ * Get时随机选择一个副本读取, 未命中或节点失效时依次尝试其余副本, 避免单个热点Key压垮一个Memcached节点.
+ * 副本Key为"key#n"形式, 通过一致性哈希环挑选落在不同节点上的后缀. Incr/Decr的计数器无法在副本间保持一致, 不做复制.
+ * 
+ * 注入MemcachedMetrics后记录各操作的延时, 命中率, 超时与Value大小, 见{@link MemcachedMetrics}.
+ * 
  * @author calvin
  */
 public class SpyMemcachedClient implements DisposableBean {
@@ -34,88 +58,280 @@ public class SpyMemcachedClient implements DisposableBean {
 
 	private long updateTimeout = 2500;
 
+	private static final String REPLICA_SEPARATOR = "#";
+
+	private static final int MAX_REPLICA_PROBES = 64;
+
+	private int hotKeyReplicas = 1;
+
+	private Set<String> hotKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private ConcurrentMap<String, ReplicaKeys> replicaKeysCache = new ConcurrentHashMap<String, ReplicaKeys>();
+
+	private MemcachedMetrics metrics;
+
+	private Transcoder<Object> transcoder;
+
 	/**
 	 * Get方法, 转换结果类型并屏蔽异常, 仅返回Null.
+	 * 热点Key随机读取一个副本, 未命中时依次尝试其余副本.
 	 */
 	public <T> T get(String key) {
-		try {
-			return (T) memcachedClient.get(key);
-		} catch (RuntimeException e) {
-			handleException(e, key);
-			return null;
+		String[] replicaKeys = getReplicaKeys(key);
+		if (replicaKeys == null) {
+			try {
+				return (T) recordHitOrMiss(doGet(key));
+			} catch (RuntimeException e) {
+				handleException(e, key);
+				return null;
+			}
+		}
+
+		return (T) recordHitOrMiss(getFromReplicas(key));
+	}
+
+	/**
+	 * 从随机一个副本开始依次读取热点Key的各副本, 返回第一个命中的值.
+	 */
+	private <T> T getFromReplicas(String key) {
+		String[] replicaKeys = getReplicaKeys(key);
+		int start = ThreadLocalRandom.current().nextInt(replicaKeys.length);
+		for (int i = 0; i < replicaKeys.length; i++) {
+			String replicaKey = replicaKeys[(start + i) % replicaKeys.length];
+			try {
+				Object value = doGet(replicaKey);
+				if (value != null) {
+					return (T) value;
+				}
+			} catch (RuntimeException e) {
+				handleException(e, replicaKey);
+			}
 		}
+		return null;
 	}
 
 	/**
 	 * GetBulk方法, 转换结果类型并屏蔽异常.
+	 * 热点Key随机读取一个副本, 未命中时再逐个尝试其余副本, 返回的Map仍以原始Key为键.
 	 */
 	public <T> Map<String, T> getBulk(Collection<String> keys) {
+		if (hotKeys.isEmpty()) {
+			try {
+				Map<String, T> result = (Map<String, T>) doGetBulk(keys);
+				recordHitsAndMisses(result.size(), keys.size());
+				return result;
+			} catch (RuntimeException e) {
+				handleException(e, StringUtils.join(keys, ","));
+				return null;
+			}
+		}
+
+		Map<String, String> requestKeys = new HashMap<String, String>(keys.size());
+		for (String key : keys) {
+			String[] replicaKeys = getReplicaKeys(key);
+			String requestKey = replicaKeys == null ? key : replicaKeys[ThreadLocalRandom.current().nextInt(
+					replicaKeys.length)];
+			requestKeys.put(requestKey, key);
+		}
+
+		Map<String, T> result;
 		try {
-			return (Map<String, T>) memcachedClient.getBulk(keys);
+			Map<String, Object> values = doGetBulk(requestKeys.keySet());
+			result = new HashMap<String, T>(values.size());
+			for (Map.Entry<String, Object> entry : values.entrySet()) {
+				result.put(requestKeys.get(entry.getKey()), (T) entry.getValue());
+			}
 		} catch (RuntimeException e) {
 			handleException(e, StringUtils.join(keys, ","));
 			return null;
 		}
+
+		// 未命中的热点Key与get()一样依次尝试其余副本.
+		for (String key : keys) {
+			if (!result.containsKey(key) && (getReplicaKeys(key) != null)) {
+				T value = getFromReplicas(key);
+				if (value != null) {
+					result.put(key, value);
+				}
+			}
+		}
+		recordHitsAndMisses(result.size(), keys.size());
+		return result;
 	}
 
 	/**
 	 * 异步Set方法, 不考虑执行结果.
 	 */
 	public void set(String key, int expiredTime, Object value) {
-		memcachedClient.set(key, expiredTime, value);
+		String[] replicaKeys = getReplicaKeys(key);
+		if (replicaKeys == null) {
+			doSet(key, expiredTime, value);
+			return;
+		}
+
+		for (String replicaKey : replicaKeys) {
+			doSet(replicaKey, expiredTime, value);
+		}
 	}
 
 	/**
 	 * 安全的Set方法, 保证在updateTimeout秒内返回执行结果, 否则返回false并取消操作.
+	 * 热点Key需所有副本均写入成功才返回true.
 	 */
 	public boolean safeSet(String key, int expiration, Object value) {
-		Future<Boolean> future = memcachedClient.set(key, expiration, value);
+		long start = System.nanoTime();
+		String[] replicaKeys = getReplicaKeys(key);
+		boolean success;
+		if (replicaKeys == null) {
+			success = waitFor(doSet(key, expiration, value));
+		} else {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(replicaKeys.length);
+			for (String replicaKey : replicaKeys) {
+				futures.add(doSet(replicaKey, expiration, value));
+			}
+			success = waitForAll(futures);
+		}
+		recordLatency(Operation.SET, start);
+		return success;
+	}
+
+	/**
+	 * 安全的Add方法, 仅当Key不存在时写入, 保证在updateTimeout秒内返回执行结果, 否则返回false并取消操作.
+	 * 用于分布式锁等需要原子占位的场景, 不做热点Key复制.
+	 */
+	public boolean safeAdd(String key, int expiration, Object value) {
+		long start = System.nanoTime();
+		recordCall(Operation.ADD);
+		boolean success = waitFor(memcachedClient.add(key, expiration, value));
+		recordLatency(Operation.ADD, start);
+		return success;
+	}
+
+	/**
+	 * Gets方法, 返回值及其CAS版本号, 屏蔽异常, Key不存在或出错时返回Null.
+	 */
+	public <T> CASValue<T> gets(String key) {
+		recordCall(Operation.CAS);
+		long start = System.nanoTime();
 		try {
-			return future.get(updateTimeout, TimeUnit.MILLISECONDS);
-		} catch (Exception e) {
-			future.cancel(false);
+			return (CASValue<T>) memcachedClient.gets(key);
+		} catch (RuntimeException e) {
+			handleException(e, key);
+			return null;
+		} finally {
+			recordLatency(Operation.CAS, start);
+		}
+	}
+
+	/**
+	 * CAS方法, 仅当Key的版本号仍为casId时写入, 成功返回true, 版本冲突, Key不存在或出错时返回false.
+	 */
+	public boolean cas(String key, long casId, int expiration, Object value) {
+		recordCall(Operation.CAS);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.cas(key, casId, expiration, value) == CASResponse.OK;
+		} catch (RuntimeException e) {
+			handleException(e, key);
+			return false;
+		} finally {
+			recordLatency(Operation.CAS, start);
 		}
-		return false;
 	}
 
 	/**
 	 * 异步 Delete方法, 不考虑执行结果.
 	 */
 	public void delete(String key) {
-		memcachedClient.delete(key);
+		String[] replicaKeys = getReplicaKeys(key);
+		if (replicaKeys == null) {
+			memcachedClient.delete(key);
+			recordCall(Operation.DELETE);
+			return;
+		}
+
+		for (String replicaKey : replicaKeys) {
+			memcachedClient.delete(replicaKey);
+			recordCall(Operation.DELETE);
+		}
 	}
 
 	/**
 	 * 安全的Delete方法, 保证在updateTimeout秒内返回执行结果, 否则返回false并取消操作.
+	 * 热点Key需所有副本均删除成功才返回true.
 	 */
 	public boolean safeDelete(String key) {
-		Future<Boolean> future = memcachedClient.delete(key);
-		try {
-			return future.get(updateTimeout, TimeUnit.MILLISECONDS);
-		} catch (Exception e) {
-			future.cancel(false);
+		long start = System.nanoTime();
+		String[] replicaKeys = getReplicaKeys(key);
+		boolean success;
+		if (replicaKeys == null) {
+			recordCall(Operation.DELETE);
+			success = waitFor(memcachedClient.delete(key));
+		} else {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(replicaKeys.length);
+			for (String replicaKey : replicaKeys) {
+				recordCall(Operation.DELETE);
+				futures.add(memcachedClient.delete(replicaKey));
+			}
+			success = waitForAll(futures);
 		}
-		return false;
+		recordLatency(Operation.DELETE, start);
+		return success;
 	}
 
 	/**
 	 * Incr方法.
 	 */
 	public long incr(String key, int by, long defaultValue) {
-		return memcachedClient.incr(key, by, defaultValue);
+		recordCall(Operation.INCR);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.incr(key, by, defaultValue);
+		} catch (RuntimeException e) {
+			recordFailure(e);
+			throw e;
+		} finally {
+			recordLatency(Operation.INCR, start);
+		}
+	}
+
+	/**
+	 * Incr方法, Key不存在时以defaultValue初始化并设置过期时间.
+	 */
+	public long incr(String key, int by, long defaultValue, int expiration) {
+		recordCall(Operation.INCR);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.incr(key, by, defaultValue, expiration);
+		} catch (RuntimeException e) {
+			recordFailure(e);
+			throw e;
+		} finally {
+			recordLatency(Operation.INCR, start);
+		}
 	}
 
 	/**
 	 * Decr方法.
 	 */
 	public long decr(String key, int by, long defaultValue) {
-		return memcachedClient.decr(key, by, defaultValue);
+		recordCall(Operation.DECR);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.decr(key, by, defaultValue);
+		} catch (RuntimeException e) {
+			recordFailure(e);
+			throw e;
+		} finally {
+			recordLatency(Operation.DECR, start);
+		}
 	}
 
 	/**
 	 * 异步Incr方法, 不支持默认值, 若key不存在返回-1.
 	 */
 	public Future<Long> asyncIncr(String key, int by) {
+		recordCall(Operation.INCR);
 		return memcachedClient.asyncIncr(key, by);
 	}
 
@@ -123,10 +339,168 @@ public class SpyMemcachedClient implements DisposableBean {
 	 * 异步Decr方法, 不支持默认值, 若key不存在返回-1.
 	 */
 	public Future<Long> asyncDecr(String key, int by) {
+		recordCall(Operation.DECR);
 		return memcachedClient.asyncDecr(key, by);
 	}
 
+	/**
+	 * 将Key标记为热点Key, 之后的Set/Delete将写入所有副本.
+	 * 标记前已写入的值只存在于主节点, 副本未命中时会回退读取主节点.
+	 */
+	public void markHotKey(String key) {
+		hotKeys.add(key);
+	}
+
+	/**
+	 * 取消热点Key标记, 已写入的副本等待自然过期.
+	 */
+	public void unmarkHotKey(String key) {
+		hotKeys.remove(key);
+		replicaKeysCache.remove(key);
+	}
+
+	public boolean isHotKey(String key) {
+		return hotKeys.contains(key);
+	}
+
+	/**
+	 * 返回热点Key的所有副本Key, 第一个元素为Key本身; 非热点Key或未开启复制时返回null.
+	 */
+	String[] getReplicaKeys(String key) {
+		if (hotKeyReplicas <= 1 || !hotKeys.contains(key)) {
+			return null;
+		}
+
+		// 节点增减后副本可能落到同一节点上, 节点集合变化时重新计算.
+		NodeLocator locator = memcachedClient.getNodeLocator();
+		int nodesSignature = nodesSignature(locator);
+		ReplicaKeys replicaKeys = replicaKeysCache.get(key);
+		if ((replicaKeys == null) || (replicaKeys.nodesSignature != nodesSignature)) {
+			replicaKeys = new ReplicaKeys(computeReplicaKeys(locator, key), nodesSignature);
+			replicaKeysCache.put(key, replicaKeys);
+		}
+		return replicaKeys.keys;
+	}
+
+	private static int nodesSignature(NodeLocator locator) {
+		int signature = 0;
+		for (MemcachedNode node : locator.getAll()) {
+			signature = (31 * signature) + node.getSocketAddress().hashCode();
+		}
+		return signature;
+	}
+
+	/**
+	 * 在一致性哈希环上探测"key#n"形式的后缀, 挑选出落在不同节点上的副本Key, 节点数不足时副本数随之减少.
+	 */
+	private String[] computeReplicaKeys(NodeLocator locator, String key) {
+		int replicas = Math.min(hotKeyReplicas, locator.getAll().size());
+
+		List<String> replicaKeys = new ArrayList<String>(replicas);
+		replicaKeys.add(key);
+		Set<SocketAddress> usedNodes = new HashSet<SocketAddress>();
+		usedNodes.add(locator.getPrimary(key).getSocketAddress());
+
+		for (int i = 1; (replicaKeys.size() < replicas) && (i <= MAX_REPLICA_PROBES); i++) {
+			String candidate = key + REPLICA_SEPARATOR + i;
+			if (usedNodes.add(locator.getPrimary(candidate).getSocketAddress())) {
+				replicaKeys.add(candidate);
+			}
+		}
+		return replicaKeys.toArray(new String[replicaKeys.size()]);
+	}
+
+	private Object doGet(String key) {
+		if (metrics == null) {
+			return memcachedClient.get(key);
+		}
+
+		metrics.recordCall(Operation.GET);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.get(key, transcoder);
+		} finally {
+			metrics.recordLatency(Operation.GET, start);
+		}
+	}
+
+	private Map<String, Object> doGetBulk(Collection<String> keys) {
+		if (metrics == null) {
+			return memcachedClient.getBulk(keys);
+		}
+
+		metrics.recordCall(Operation.GET_BULK);
+		long start = System.nanoTime();
+		try {
+			return memcachedClient.getBulk(keys, transcoder);
+		} finally {
+			metrics.recordLatency(Operation.GET_BULK, start);
+		}
+	}
+
+	private Future<Boolean> doSet(String key, int expiration, Object value) {
+		if (metrics == null) {
+			return memcachedClient.set(key, expiration, value);
+		}
+
+		metrics.recordCall(Operation.SET);
+		return memcachedClient.set(key, expiration, value, transcoder);
+	}
+
+	private boolean waitFor(Future<Boolean> future) {
+		try {
+			return future.get(updateTimeout, TimeUnit.MILLISECONDS);
+		} catch (Exception e) {
+			recordFailure(e);
+			future.cancel(false);
+		}
+		return false;
+	}
+
+	private boolean waitForAll(List<Future<Boolean>> futures) {
+		boolean success = true;
+		for (Future<Boolean> future : futures) {
+			success &= waitFor(future);
+		}
+		return success;
+	}
+
+	private Object recordHitOrMiss(Object value) {
+		recordHitsAndMisses(value != null ? 1 : 0, 1);
+		return value;
+	}
+
+	private void recordHitsAndMisses(int hits, int total) {
+		if (metrics != null) {
+			metrics.recordHits(hits);
+			metrics.recordMisses(total - hits);
+		}
+	}
+
+	private void recordLatency(Operation operation, long startNanos) {
+		if (metrics != null) {
+			metrics.recordLatency(operation, startNanos);
+		}
+	}
+
+	private void recordCall(Operation operation) {
+		if (metrics != null) {
+			metrics.recordCall(operation);
+		}
+	}
+
+	private void recordFailure(Exception e) {
+		if (metrics != null) {
+			if ((e instanceof OperationTimeoutException) || (e instanceof TimeoutException)) {
+				metrics.recordTimeout();
+			} else {
+				metrics.recordError();
+			}
+		}
+	}
+
 	private void handleException(Exception e, String key) {
+		recordFailure(e);
 		logger.warn("spymemcached client receive an exception with key:" + key, e);
 	}
 
@@ -143,6 +517,25 @@ public class SpyMemcachedClient implements DisposableBean {
 
 	public void setMemcachedClient(MemcachedClient memcachedClient) {
 		this.memcachedClient = memcachedClient;
+		initTranscoder();
+	}
+
+	public MemcachedMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 设置监控统计, 默认为null即不统计.
+	 */
+	public void setMetrics(MemcachedMetrics metrics) {
+		this.metrics = metrics;
+		initTranscoder();
+	}
+
+	private void initTranscoder() {
+		if ((memcachedClient != null) && (metrics != null)) {
+			transcoder = metrics.measure(memcachedClient.getTranscoder());
+		}
 	}
 
 	public void setUpdateTimeout(long updateTimeout) {
@@ -152,4 +545,32 @@ public class SpyMemcachedClient implements DisposableBean {
 	public void setShutdownTimeout(long shutdownTimeout) {
 		this.shutdownTimeout = shutdownTimeout;
 	}
+
+	/**
+	 * 热点Key的副本总数(含主副本), 默认为1即不复制.
+	 */
+	public void setHotKeyReplicas(int hotKeyReplicas) {
+		this.hotKeyReplicas = hotKeyReplicas;
+		replicaKeysCache.clear();
+	}
+
+	public void setHotKeys(Collection<String> hotKeys) {
+		this.hotKeys.clear();
+		this.hotKeys.addAll(hotKeys);
+		replicaKeysCache.clear();
+	}
+
+	/**
+	 * 缓存的副本Key, 以及计算时节点集合的签名.
+	 */
+	private static class ReplicaKeys {
+
+		final String[] keys;
+		final int nodesSignature;
+
+		ReplicaKeys(String[] keys, int nodesSignature) {
+			this.keys = keys;
+			this.nodesSignature = nodesSignature;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void bucketBounds() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE }) {
+			int index = Histogram.bucketIndex(value);
+			assertTrue(Histogram.bucketUpperBound(index) >= value);
+			if (index > 0) {
+				assertTrue(Histogram.bucketUpperBound(index - 1) < value);
+			}
+		}
+	}
+
+	@Test
+	public void percentile() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000, snapshot.getMax());
+		assertEquals(500.5, snapshot.getMean(), 0.01);
+		// 相对误差不超过1/16
+		assertEquals(500, snapshot.percentile(50), 500 / 16);
+		assertEquals(990, snapshot.percentile(99), 990 / 16);
+		assertEquals(1000, snapshot.percentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+		assertEquals(0, histogram.snapshot().percentile(99));
+	}
+}
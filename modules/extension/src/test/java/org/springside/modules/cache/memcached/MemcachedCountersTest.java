@@ -0,0 +1,126 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemcachedCountersTest extends MemcachedTestBase {
+
+	private static final String SERVER = "localhost:11621";
+
+	private MemcachedCounters counters;
+
+	@Override
+	protected String[] servers() {
+		return new String[] { SERVER };
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		client.setMetrics(new MemcachedMetrics());
+
+		counters = new MemcachedCounters();
+		counters.setSpyMemcachedClient(client);
+		counters.setFlushInterval(60000);
+		counters.afterPropertiesSet();
+	}
+
+	@Test
+	public void aggregateIncrements() throws Exception {
+		final int threads = 8;
+		final int loops = 1000;
+		final CountDownLatch finish = new CountDownLatch(threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < loops; j++) {
+						counters.increment("pv");
+					}
+					finish.countDown();
+				}
+			});
+		}
+		finish.await(10, TimeUnit.SECONDS);
+		pool.shutdown();
+
+		assertEquals(threads * loops, counters.getPending("pv"));
+		assertEquals(0, client.getMetrics().snapshot().getCalls(MemcachedMetrics.Operation.INCR));
+
+		counters.flush();
+		assertEquals(0, counters.getPending("pv"));
+		assertEquals(1, client.getMetrics().snapshot().getCalls(MemcachedMetrics.Operation.INCR));
+		assertEquals(threads * loops, client.incr("pv", 0, 0));
+
+		counters.increment("pv", 5);
+		counters.destroy();
+		assertEquals(threads * loops + 5, client.incr("pv", 0, 0));
+	}
+
+	@Test
+	public void failedIncrIsRetried() throws Exception {
+		final AtomicInteger failures = new AtomicInteger(1);
+		SpyMemcachedClient failingClient = new SpyMemcachedClient() {
+			@Override
+			public long incr(String key, int by, long defaultValue) {
+				return failures.getAndDecrement() > 0 ? -1 : client.incr(key, by, defaultValue);
+			}
+		};
+		counters.setSpyMemcachedClient(failingClient);
+
+		counters.increment("clicks", 3);
+		counters.flush();
+		assertEquals(1, counters.getFlushFailures());
+		assertEquals(3, counters.getPending("clicks"));
+
+		counters.flush();
+		assertEquals(0, counters.getPending("clicks"));
+		assertEquals(3, client.incr("clicks", 0, 0));
+	}
+
+	@Test
+	public void retiredCounterRejectsIncrements() {
+		MemcachedCounters.StripedCounter counter = new MemcachedCounters.StripedCounter();
+		assertTrue(counter.add(5));
+		assertEquals(5, counter.retire());
+		assertFalse(counter.add(1));
+		assertEquals(0, counter.sum());
+	}
+
+	@Test
+	public void noIncrementLostWhileIdleKeysAreRemoved() throws Exception {
+		final int threads = 4;
+		final int loops = 20000;
+		final CountDownLatch finish = new CountDownLatch(threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < loops; j++) {
+						counters.increment("uv");
+						if ((j % 100) == 0) {
+							Thread.yield();
+						}
+					}
+					finish.countDown();
+				}
+			});
+		}
+		while (!finish.await(1, TimeUnit.MILLISECONDS)) {
+			counters.flush();
+		}
+		pool.shutdown();
+
+		counters.destroy();
+		assertEquals(threads * loops, client.incr("uv", 0, 0));
+	}
+}
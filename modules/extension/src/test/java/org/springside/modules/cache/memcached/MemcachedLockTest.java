@@ -0,0 +1,62 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springside.modules.utils.Threads;
+
+public class MemcachedLockTest extends MemcachedTestBase {
+
+	private static final String SERVER = "localhost:11641";
+
+	@Override
+	protected String[] servers() {
+		return new String[] { SERVER };
+	}
+
+	@Test
+	public void mutualExclusion() {
+		MemcachedLock node1 = new MemcachedLock(client, "report", 30);
+		MemcachedLock node2 = new MemcachedLock(client, "report", 30);
+
+		assertTrue(node1.tryLock());
+		assertTrue(node1.isHeldLocally());
+		assertFalse(node1.tryLock());
+		assertFalse(node2.tryLock(200, TimeUnit.MILLISECONDS));
+
+		assertTrue(node1.renew());
+		assertFalse(node2.renew());
+
+		// 非持有者解锁不影响持有者
+		node2.unlock();
+		assertFalse(node2.tryLock());
+
+		node1.unlock();
+		assertFalse(node1.isHeldLocally());
+		assertTrue(node2.tryLock());
+		node2.unlock();
+	}
+
+	@Test
+	public void expiredLease() {
+		MemcachedLock node1 = new MemcachedLock(client, "expiring", 1);
+		MemcachedLock node2 = new MemcachedLock(client, "expiring", 30);
+
+		assertTrue(node1.tryLock());
+		Threads.sleep(2100);
+
+		// 租约到期后他人可以获得锁, 原持有者的tryLock清理本地状态而不是一直返回false
+		assertTrue(node2.tryLock());
+		assertFalse(node1.tryLock());
+		assertFalse(node1.isHeldLocally());
+
+		// 原持有者解锁不影响新的持有者
+		node1.unlock();
+		assertTrue(node2.renew());
+		node2.unlock();
+		assertTrue(node1.tryLock());
+		node1.unlock();
+	}
+}
@@ -0,0 +1,39 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springside.modules.utils.Threads;
+
+public class MemcachedNamespaceTest extends MemcachedTestBase {
+
+	private static final String SERVER = "localhost:11661";
+
+	@Override
+	protected String[] servers() {
+		return new String[] { SERVER };
+	}
+
+	@Test
+	public void invalidate() {
+		MemcachedNamespace node1 = new MemcachedNamespace(client);
+		MemcachedNamespace node2 = new MemcachedNamespace(client);
+		node2.setLocalTtlMillis(100);
+
+		long generation = node1.getGeneration("tenant:42");
+		assertEquals(generation, node2.getGeneration("tenant:42"));
+
+		assertTrue(client.safeSet(node1.key("tenant:42", "orders"), 60, "value"));
+		assertTrue(client.safeSet(node1.key("tenant:43", "orders"), 60, "other"));
+		assertEquals("value", client.get(node2.key("tenant:42", "orders")));
+
+		node1.invalidate("tenant:42");
+		assertEquals(generation + 1, node1.getGeneration("tenant:42"));
+		assertNull(client.get(node1.key("tenant:42", "orders")));
+		assertEquals("other", client.get(node1.key("tenant:43", "orders")));
+
+		// 其他节点在本地缓存过期后看到新版本号
+		Threads.sleep(150);
+		assertNull(client.get(node2.key("tenant:42", "orders")));
+	}
+}
@@ -0,0 +1,56 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemcachedRateLimiterTest extends MemcachedTestBase {
+
+	private static final String SERVER = "localhost:11631";
+
+	@Override
+	protected String[] servers() {
+		return new String[] { SERVER };
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		client.setMetrics(new MemcachedMetrics());
+	}
+
+	@Test
+	public void limitAcrossNodes() {
+		MemcachedRateLimiter node1 = new MemcachedRateLimiter(client, "exact", 10, 3600);
+		MemcachedRateLimiter node2 = new MemcachedRateLimiter(client, "exact", 10, 3600);
+
+		for (int i = 0; i < 6; i++) {
+			assertTrue(node1.tryAcquire());
+		}
+		for (int i = 0; i < 4; i++) {
+			assertTrue(node2.tryAcquire());
+		}
+		assertFalse(node1.tryAcquire());
+		assertFalse(node2.tryAcquire());
+	}
+
+	@Test
+	public void localFastPath() {
+		MemcachedRateLimiter node1 = new MemcachedRateLimiter(client, "batch", 10, 3600);
+		MemcachedRateLimiter node2 = new MemcachedRateLimiter(client, "batch", 10, 3600);
+		node1.setBatchSize(4);
+		node2.setBatchSize(4);
+
+		int admitted = 0;
+		for (int i = 0; i < 20; i++) {
+			admitted += node1.tryAcquire() ? 1 : 0;
+			admitted += node2.tryAcquire() ? 1 : 0;
+		}
+		assertEquals(10, admitted);
+
+		// 配额耗尽后在本地直接拒绝, 不再访问Memcached
+		long incrCalls = client.getMetrics().snapshot().getCalls(MemcachedMetrics.Operation.INCR);
+		assertFalse(node1.tryAcquire());
+		assertEquals(incrCalls, client.getMetrics().snapshot().getCalls(MemcachedMetrics.Operation.INCR));
+	}
+}
@@ -0,0 +1,49 @@
+package org.springside.modules.cache.memcached;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.springside.modules.test.cache.memcached.MemcachedSimulator;
+
+/**
+ * 启动Memcached模拟器并创建连接到模拟器的SpyMemcachedClient的测试基类.
+ * 
+ * 每个子类使用各自的端口, 避免测试并行执行时端口冲突.
+ */
+public abstract class MemcachedTestBase {
+
+	protected MemcachedSimulator[] simulators;
+
+	protected SpyMemcachedClient client;
+
+	/**
+	 * 模拟器监听的地址, 如"localhost:11611".
+	 */
+	protected abstract String[] servers();
+
+	@Before
+	public void startSimulators() throws Exception {
+		String[] servers = servers();
+		simulators = new MemcachedSimulator[servers.length];
+		for (int i = 0; i < servers.length; i++) {
+			simulators[i] = new MemcachedSimulator();
+			simulators[i].setServerUrl(servers[i]);
+			simulators[i].afterPropertiesSet();
+		}
+
+		KetamaMemcachedClientFactoryBean factory = new KetamaMemcachedClientFactoryBean();
+		factory.setServers(StringUtils.join(servers, " "));
+		factory.afterPropertiesSet();
+
+		client = new SpyMemcachedClient();
+		client.setMemcachedClient(factory.getObject());
+	}
+
+	@After
+	public void stopSimulators() throws Exception {
+		client.destroy();
+		for (MemcachedSimulator simulator : simulators) {
+			simulator.destroy();
+		}
+	}
+}
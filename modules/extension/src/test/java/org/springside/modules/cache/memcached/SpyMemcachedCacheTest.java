@@ -0,0 +1,170 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springside.modules.utils.Threads;
+
+public class SpyMemcachedCacheTest extends MemcachedTestBase {
+
+	private static final String SERVER = "localhost:11651";
+
+	private SpyMemcachedCacheManager cacheManager;
+
+	@Override
+	protected String[] servers() {
+		return new String[] { SERVER };
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		cacheManager = new SpyMemcachedCacheManager();
+		cacheManager.setSpyMemcachedClient(client);
+		cacheManager.setKeyPrefix("test:");
+		cacheManager.setExpires(Collections.singletonMap("users", 600));
+		cacheManager.afterPropertiesSet();
+	}
+
+	@Test
+	public void putAndGet() {
+		SpyMemcachedCache cache = (SpyMemcachedCache) cacheManager.getCache("users");
+		assertTrue(cacheManager.getCacheNames().contains("users"));
+
+		assertNull(cache.get("1"));
+		cache.put("1", "calvin");
+		assertEquals("calvin", waitFor(cache, "1").get());
+		assertTrue(cache.memcachedKey("1").startsWith("test:users"));
+		assertEquals("calvin", client.get(cache.memcachedKey("1")));
+
+		cache.put("2", null);
+		assertNull(waitFor(cache, "2").get());
+
+		cache.evict("1");
+		Threads.sleep(100);
+		assertNull(cache.get("1"));
+	}
+
+	@Test
+	public void getAll() {
+		SpyMemcachedCache cache = (SpyMemcachedCache) cacheManager.getCache("products");
+		cache.put("a", "apple");
+		cache.put("b", "banana");
+		waitFor(cache, "b");
+
+		Map<Object, Object> result = cache.getAll(Arrays.asList("a", "b", "c"));
+		assertEquals(2, result.size());
+		assertEquals("apple", result.get("a"));
+		assertEquals("banana", result.get("b"));
+	}
+
+	@Test
+	public void longKeyIsHashed() {
+		SpyMemcachedCache cache = (SpyMemcachedCache) cacheManager.getCache("products");
+		String longKey = StringUtils.repeat("k", 300);
+		assertTrue(cache.memcachedKey(longKey).length() < 250);
+		assertTrue(cache.memcachedKey("a key with spaces").indexOf(' ') < 0);
+
+		cache.put(longKey, "value");
+		assertEquals("value", waitFor(cache, longKey).get());
+
+		// 按UTF-8字节数而非字符数判断长度, 并为锁Key的后缀预留空间
+		String chineseKey = StringUtils.repeat("键", 100);
+		assertTrue(cache.memcachedKey(chineseKey).getBytes(StandardCharsets.UTF_8).length <= 245);
+
+		// 前缀过长时对整个Key取摘要
+		SpyMemcachedCache longPrefixCache = new SpyMemcachedCache(StringUtils.repeat("c", 240), client, "test:", 600);
+		assertTrue(longPrefixCache.memcachedKey("1").length() <= 245);
+	}
+
+	@Test
+	public void clearManagedCache() {
+		Cache cache = cacheManager.getCache("users");
+		cache.put("1", "calvin");
+		assertEquals("calvin", waitFor(cache, "1").get());
+
+		cache.clear();
+		assertNull(cache.get("1"));
+	}
+
+	@Test
+	public void clearStandaloneCache() {
+		SpyMemcachedCache cache = new SpyMemcachedCache("standalone", client, "test:", 600);
+		cache.put("1", "calvin");
+		assertEquals("calvin", waitFor(cache, "1").get());
+
+		cache.clear();
+		assertNull(cache.get("1"));
+	}
+
+	@Test
+	public void clearWithNamespace() {
+		SpyMemcachedCache cache = new SpyMemcachedCache("tenants", client, "test:", 600);
+		cache.setNamespace(new MemcachedNamespace(client));
+
+		cache.put("1", "calvin");
+		assertEquals("calvin", waitFor(cache, "1").get());
+
+		cache.clear();
+		assertNull(cache.get("1"));
+	}
+
+	@Test
+	public void stampedeProtection() {
+		SpyMemcachedCache cache = new SpyMemcachedCache("hot", client, "test:", 1);
+		cache.setStampedeProtection(true);
+		cache.setStampedeWaitMillis(100);
+
+		// 未命中时第一个调用者获得重算权, 其余调用者等待超时后也返回未命中
+		assertNull(cache.get("1"));
+		assertNull(cache.get("1"));
+
+		cache.put("1", "value");
+		assertEquals("value", waitFor(cache, "1").get());
+
+		// 软过期后只有一个调用者返回未命中, 其余调用者得到旧值
+		Threads.sleep(1100);
+		assertNull(cache.get("1"));
+		assertEquals("value", cache.get("1").get());
+	}
+
+	@Test
+	public void stampedeLockReleasedByEvict() {
+		final SpyMemcachedCache cache = new SpyMemcachedCache("failing", client, "test:", 600);
+		cache.setStampedeProtection(true);
+		cache.setStampedeWaitMillis(5000);
+
+		// 第一个调用者获得重算权后重算失败并evict, 等待者发现锁已释放后立即获得重算权, 不必等到超时
+		assertNull(cache.get("1"));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Threads.sleep(100);
+				cache.evict("1");
+			}
+		}).start();
+
+		long start = System.currentTimeMillis();
+		assertNull(cache.get("1"));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+	private Cache.ValueWrapper waitFor(Cache cache, Object key) {
+		for (int i = 0; i < 50; i++) {
+			Cache.ValueWrapper wrapper = cache.get(key);
+			if (wrapper != null) {
+				return wrapper;
+			}
+			Threads.sleep(10);
+		}
+		fail("value not found for key:" + key);
+		return null;
+	}
+}
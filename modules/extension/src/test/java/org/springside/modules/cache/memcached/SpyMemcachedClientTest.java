@@ -0,0 +1,105 @@
+package org.springside.modules.cache.memcached;
+
+import static org.junit.Assert.*;
+
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.spy.memcached.MemcachedClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springside.modules.cache.memcached.MemcachedMetrics.Operation;
+
+public class SpyMemcachedClientTest extends MemcachedTestBase {
+
+	private static final String[] SERVERS = { "localhost:11611", "localhost:11612", "localhost:11613" };
+
+	@Override
+	protected String[] servers() {
+		return SERVERS;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		client.setHotKeyReplicas(3);
+	}
+
+	@Test
+	public void normalKey() {
+		assertTrue(client.safeSet("normal", 60, "value"));
+		assertNull(client.getReplicaKeys("normal"));
+		assertEquals("value", client.get("normal"));
+		assertNull(client.getMemcachedClient().get("normal#1"));
+	}
+
+	@Test
+	public void hotKeyReplicatedToDistinctNodes() {
+		client.markHotKey("celebrity");
+		assertTrue(client.safeSet("celebrity", 60, "value"));
+
+		String[] replicaKeys = client.getReplicaKeys("celebrity");
+		assertEquals(3, replicaKeys.length);
+		assertEquals("celebrity", replicaKeys[0]);
+
+		MemcachedClient memcachedClient = client.getMemcachedClient();
+		Set<SocketAddress> nodes = new HashSet<SocketAddress>();
+		for (String replicaKey : replicaKeys) {
+			assertEquals("value", memcachedClient.get(replicaKey));
+			nodes.add(memcachedClient.getNodeLocator().getPrimary(replicaKey).getSocketAddress());
+		}
+		assertEquals(3, nodes.size());
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("value", client.get("celebrity"));
+		}
+		assertEquals("value", client.getBulk(Collections.singleton("celebrity")).get("celebrity"));
+
+		assertTrue(client.safeDelete("celebrity"));
+		for (String replicaKey : replicaKeys) {
+			assertNull(memcachedClient.get(replicaKey));
+		}
+	}
+
+	@Test
+	public void metrics() {
+		MemcachedMetrics metrics = new MemcachedMetrics();
+		client.setMetrics(metrics);
+
+		assertTrue(client.safeSet("metrics", 60, "value"));
+		assertEquals("value", client.get("metrics"));
+		assertNull(client.get("absent"));
+		client.getBulk(Arrays.asList("metrics", "absent"));
+
+		MemcachedMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getHits());
+		assertEquals(2, snapshot.getMisses());
+		assertEquals(0.5, snapshot.getHitRatio(), 0.001);
+		assertEquals(2, snapshot.getCalls(Operation.GET));
+		assertEquals(2, snapshot.getLatency(Operation.GET).getCount());
+		assertEquals(1, snapshot.getLatency(Operation.GET_BULK).getCount());
+		assertEquals(1, snapshot.getLatency(Operation.SET).getCount());
+		assertEquals(1, snapshot.getWriteValueSizes().getCount());
+		assertEquals(2, snapshot.getReadValueSizes().getCount());
+		assertEquals(0, snapshot.getTimeouts());
+
+		metrics.reset();
+		assertEquals(0, metrics.getHitCount());
+	}
+
+	@Test
+	public void hotKeyReadFallsBackToOtherReplicas() {
+		client.markHotKey("celebrity");
+		client.safeSet("celebrity", 60, "value");
+
+		// 模拟主副本丢失, 读取仍应从其余副本命中
+		client.getMemcachedClient().delete("celebrity");
+		for (int i = 0; i < 10; i++) {
+			assertEquals("value", client.get("celebrity"));
+			assertEquals("value", client.getBulk(Collections.singleton("celebrity")).get("celebrity"));
+		}
+	}
+}
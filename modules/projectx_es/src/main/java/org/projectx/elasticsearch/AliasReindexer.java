@@ -0,0 +1,223 @@
+package org.projectx.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesResponse;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Rebuilds the index behind an alias without downtime. Searches keep going
+ * to the alias, and thereby to the current index, while a new versioned index
+ * (<code>alias_v&lt;timestamp&gt;</code>) is created with the new settings
+ * and mapping and the documents are copied into it. Only then is the alias
+ * swapped to the new index in a single atomic aliases request, and the old
+ * index dropped.
+ * <p>
+ * The copy is a {@link ParallelScan} of the current index, up to
+ * {@link #setParallelism(int) parallelism} shards at once (the number of cores
+ * by default), feeding a shared {@link BulkIndexer} inside a
+ * {@link BulkLoadSession} on the new index. Documents written to the old index
+ * during the copy are not carried over, so writers should be paused or
+ * replayed for the duration of the rebuild.
+ * <p>
+ * When the alias does not exist yet, the new index is created empty and the
+ * alias is pointed at it. An existing index named like the alias cannot be
+ * migrated without downtime and is rejected.
+ */
+public class AliasReindexer {
+
+	private static Logger logger = LoggerFactory.getLogger(AliasReindexer.class);
+
+	private final ClientTemplate template;
+
+	private final String alias;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private int pageSize = 500;
+
+	private int bulkActions = 1000;
+
+	private boolean deleteOldIndex = true;
+
+	private TimeValue scrollKeepAlive = TimeValue.timeValueMinutes(5);
+
+	public AliasReindexer(final ClientTemplate template, final String alias) {
+		Assert.notNull(template, "template cannot be null");
+		Assert.hasText(alias, "alias cannot be empty");
+
+		this.template = template;
+		this.alias = alias;
+	}
+
+	/**
+	 * Create a new index, copy the documents of the current index into it and
+	 * swap the alias
+	 * 
+	 * @param indexType
+	 *          the type of the mapping, may be null
+	 * @param settings
+	 *          the settings of the new index, may be null
+	 * @param mapping
+	 *          the mapping of the new index, may be null
+	 * @return the name of the new index
+	 */
+	public String reindex(final String indexType, final Settings settings, final XContentBuilder mapping) {
+		final List<String> oldIndices = aliasedIndices();
+		if (oldIndices.isEmpty() && template.indexExists(alias)) {
+			throw new IllegalStateException("[" + alias + "] is an index rather than an alias, it cannot be swapped without downtime");
+		}
+
+		final String newIndex = alias + "_v" + System.currentTimeMillis();
+		template.createIndex(newIndex, indexType, settings, mapping);
+		logger.info("Reindexing [" + alias + "] from " + oldIndices + " into [" + newIndex + "]");
+
+		try {
+			final BulkLoadSession session = template.beginBulkLoad(newIndex);
+			try {
+				final BulkIndexer indexer = session.indexer(BulkIndexer.builder(template).setBulkActions(bulkActions)
+						.setConcurrentRequests(parallelism));
+				for (final String oldIndex : oldIndices) {
+					copy(oldIndex, newIndex, indexer);
+				}
+			} catch (final RuntimeException e) {
+				// the new index is dropped, restoring and waiting for it would be wasted
+				session.abort();
+				throw e;
+			}
+			final long failures = session.finish().getFailures();
+			if (failures > 0) {
+				throw new ElasticsearchException(failures + " documents failed to copy into [" + newIndex + "]");
+			}
+		} catch (final RuntimeException e) {
+			logger.warn("Reindexing [" + alias + "] failed, dropping [" + newIndex + "]");
+			template.deleteIndex(newIndex);
+			throw e;
+		}
+
+		swapAlias(oldIndices, newIndex);
+		if (deleteOldIndex) {
+			for (final String oldIndex : oldIndices) {
+				template.deleteIndex(oldIndex);
+			}
+		}
+		template.notifyIndexChanged(alias);
+		return newIndex;
+	}
+
+	/**
+	 * @return the physical indices the alias currently points to
+	 */
+	public List<String> aliasedIndices() {
+		final GetAliasesResponse response = template.executeGet(new NodeCallback<GetAliasesResponse>() {
+			@Override
+			public ActionFuture<GetAliasesResponse> execute(final IndicesAdminClient admin) {
+				return admin.getAliases(new GetAliasesRequest(alias));
+			}
+		});
+
+		final List<String> indices = new ArrayList<String>();
+		for (final Iterator<String> it = response.getAliases().keysIt(); it.hasNext();) {
+			indices.add(it.next());
+		}
+		return indices;
+	}
+
+	private void copy(final String oldIndex, final String newIndex, final BulkIndexer indexer) {
+		final ParallelScan scan = new ParallelScan(template, oldIndex);
+		scan.setFields("_source", "_routing", "_parent");
+		scan.setPageSize(pageSize);
+		scan.setParallelism(parallelism);
+		scan.setScrollKeepAliveMillis(scrollKeepAlive.millis());
+
+		scan.execute(new ParallelScan.SliceHandler<Void>() {
+			@Override
+			public Void handle(final ParallelScan.Slice slice, final Iterator<SearchHit> hits) {
+				while (hits.hasNext()) {
+					indexer.add(indexRequest(hits.next(), newIndex));
+				}
+				return null;
+			}
+		});
+	}
+
+	private static IndexRequest indexRequest(final SearchHit hit, final String newIndex) {
+		final IndexRequest index = Requests.indexRequest(newIndex).type(hit.getType()).id(hit.getId())
+				.source(hit.sourceRef(), false);
+		final SearchHitField routing = hit.field("_routing");
+		if (routing != null) {
+			index.routing(String.valueOf(routing.getValue()));
+		}
+		final SearchHitField parent = hit.field("_parent");
+		if (parent != null) {
+			index.parent(String.valueOf(parent.getValue()));
+		}
+		return index;
+	}
+
+	private void swapAlias(final List<String> oldIndices, final String newIndex) {
+		template.executeGet(new NodeCallback<IndicesAliasesResponse>() {
+			@Override
+			public ActionFuture<IndicesAliasesResponse> execute(final IndicesAdminClient admin) {
+				final IndicesAliasesRequest request = Requests.indexAliasesRequest().addAlias(alias, newIndex);
+				for (final String oldIndex : oldIndices) {
+					request.removeAlias(oldIndex, alias);
+				}
+				return admin.aliases(request);
+			}
+		});
+	}
+
+	/**
+	 * Maximum number of shards copied at once, and of bulk requests in flight
+	 * (default the number of cores)
+	 */
+	public void setParallelism(final int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Number of documents scanned per shard and round trip (default 500)
+	 */
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Number of documents per bulk request (default 1000)
+	 */
+	public void setBulkActions(final int bulkActions) {
+		this.bulkActions = bulkActions;
+	}
+
+	/**
+	 * Whether to delete the previous index after the alias was swapped (default
+	 * true)
+	 */
+	public void setDeleteOldIndex(final boolean deleteOldIndex) {
+		this.deleteOldIndex = deleteOldIndex;
+	}
+
+	public void setScrollKeepAliveMillis(final long scrollKeepAliveMillis) {
+		this.scrollKeepAlive = TimeValue.timeValueMillis(scrollKeepAliveMillis);
+	}
+
+}
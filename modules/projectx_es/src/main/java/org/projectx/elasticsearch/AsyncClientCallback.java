@@ -0,0 +1,29 @@
+package org.projectx.elasticsearch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.Client;
+
+/**
+ * A callback for non-blocking Elasticsearch {@link Client} based operations.
+ * Unlike {@link ClientCallback} the operation reports its outcome to an
+ * {@link ActionListener} instead of returning a future to block on
+ * 
+ * @param <T>
+ *          the {@link ActionResponse} sub-class returned by the client
+ *          operation
+ */
+public interface AsyncClientCallback<T extends ActionResponse> {
+
+	/**
+	 * Start an action using the configured {@link Client}, the admin clients
+	 * are available through {@link Client#admin()}
+	 * 
+	 * @param client
+	 *          an instance of {@link Client}
+	 * @param listener
+	 *          the listener to pass to the client operation
+	 */
+	void execute(final Client client, final ActionListener<T> listener);
+
+}
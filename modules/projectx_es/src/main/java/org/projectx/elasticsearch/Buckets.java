@@ -0,0 +1,123 @@
+package org.projectx.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+
+/**
+ * The buckets of a multi-bucket aggregation (terms, histogram, range) as
+ * parallel arrays of keys and document counts, in the order returned by
+ * Elasticsearch, e.g. by descending count for terms.
+ * <p>
+ * Numeric buckets also have their keys as numbers: the bucket key of a
+ * histogram and the lower bound of a range (negative infinity when unbounded).
+ */
+public class Buckets {
+
+	private final String[] keys;
+
+	private final double[] numericKeys;
+
+	private final long[] counts;
+
+	private final long totalHits;
+
+	Buckets(final String[] keys, final double[] numericKeys, final long[] counts, final long totalHits) {
+		this.keys = keys;
+		this.numericKeys = numericKeys;
+		this.counts = counts;
+		this.totalHits = totalHits;
+	}
+
+	/**
+	 * Convert the buckets of an aggregation of a search response
+	 * 
+	 * @param aggregation
+	 *          the aggregation
+	 * @param totalHits
+	 *          the total hits of the search
+	 * @return the buckets of the aggregation
+	 */
+	public static Buckets of(final MultiBucketsAggregation aggregation, final long totalHits) {
+		final int size = aggregation.getBuckets().size();
+		final String[] keys = new String[size];
+		final long[] counts = new long[size];
+		final boolean numeric = aggregation instanceof Histogram || aggregation instanceof Range;
+		final double[] numericKeys = numeric ? new double[size] : null;
+
+		int i = 0;
+		for (final MultiBucketsAggregation.Bucket bucket : aggregation.getBuckets()) {
+			keys[i] = bucket.getKey();
+			counts[i] = bucket.getDocCount();
+			if (bucket instanceof Histogram.Bucket) {
+				numericKeys[i] = ((Histogram.Bucket) bucket).getKeyAsNumber().doubleValue();
+			} else if (bucket instanceof Range.Bucket) {
+				final Number from = ((Range.Bucket) bucket).getFrom();
+				numericKeys[i] = from == null ? Double.NEGATIVE_INFINITY : from.doubleValue();
+			}
+			i++;
+		}
+		return new Buckets(keys, numericKeys, counts, totalHits);
+	}
+
+	public int size() {
+		return keys.length;
+	}
+
+	public String[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return the numeric keys, <code>null</code> for terms
+	 */
+	public double[] getNumericKeys() {
+		return numericKeys;
+	}
+
+	public long[] getCounts() {
+		return counts;
+	}
+
+	/**
+	 * @return the number of documents matching the query, whether they fell
+	 *         in a returned bucket or not
+	 */
+	public long getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * @param key
+	 *          a bucket key
+	 * @return the document count of the bucket, 0 if no such bucket was returned
+	 */
+	public long count(final String key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i].equals(key)) {
+				return counts[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the buckets as an ordered map of keys to counts
+	 */
+	public Map<String, Long> asMap() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>(keys.length * 2);
+		for (int i = 0; i < keys.length; i++) {
+			map.put(keys[i], counts[i]);
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return asMap().toString();
+	}
+
+}
@@ -0,0 +1,658 @@
+package org.projectx.elasticsearch;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A bulk indexing pipeline on top of {@link NodeOperations}, modelled after
+ * Elasticsearch's <code>BulkProcessor</code>.
+ * <p>
+ * Documents are accumulated into a {@link BulkRequest} which is sent once it
+ * reaches {@link Builder#setBulkActions(int) bulkActions} documents,
+ * {@link Builder#setBulkSizeBytes(long) bulkSizeBytes} bytes or when the
+ * {@link Builder#setFlushIntervalMillis(long) flush interval} elapses. At most
+ * {@link Builder#setConcurrentRequests(int) concurrentRequests} bulk requests
+ * are in flight; further adds block the caller, which gives the producer
+ * natural backpressure.
+ * <p>
+ * Items rejected by a saturated bulk thread pool (and whole rejected bulk
+ * requests) are retried with exponential backoff up to
+ * {@link Builder#setMaxRetries(int) maxRetries} times; any other item failure
+ * is reported as is. Every batch is reported to an optional {@link Listener}
+ * with its {@link BatchStats}, and the indices a batch wrote to are reported
+ * to the template's {@link IndexChangeListener}s.
+ */
+public class BulkIndexer implements Closeable {
+
+	private static Logger logger = LoggerFactory.getLogger(BulkIndexer.class);
+
+	/**
+	 * Receives the outcome of every bulk request sent by the indexer
+	 */
+	public interface Listener {
+
+		/**
+		 * Called once per batch after all retries, from the thread that executed
+		 * the batch
+		 *
+		 * @param stats
+		 *          the outcome of the batch
+		 */
+		void afterBulk(BatchStats stats);
+	}
+
+	private final NodeOperations operations;
+
+	private final String indexName;
+
+	private final int bulkActions;
+
+	private final long bulkSizeBytes;
+
+	private final int concurrentRequests;
+
+	private final int maxRetries;
+
+	private final long initialBackoffMillis;
+
+	private final int retryOnConflict;
+
+	private final Listener listener;
+
+	private final Semaphore inFlight;
+
+	private final ExecutorService executor;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final AtomicLong batchIds = new AtomicLong();
+
+	private final AtomicLong totalActions = new AtomicLong();
+
+	private final AtomicLong totalFailures = new AtomicLong();
+
+	private final AtomicLong totalRetries = new AtomicLong();
+
+	private BulkRequest bulkRequest = new BulkRequest();
+
+	private volatile boolean closed = false;
+
+	private BulkIndexer(final Builder builder) {
+		this.operations = builder.operations;
+		this.indexName = builder.indexName == null ? builder.operations.getIndexName() : builder.indexName;
+		this.bulkActions = builder.bulkActions;
+		this.bulkSizeBytes = builder.bulkSizeBytes;
+		this.concurrentRequests = builder.concurrentRequests;
+		this.maxRetries = builder.maxRetries;
+		this.initialBackoffMillis = builder.initialBackoffMillis;
+		this.retryOnConflict = builder.retryOnConflict;
+		this.listener = builder.listener;
+
+		this.inFlight = new Semaphore(Math.max(1, concurrentRequests));
+		this.executor = concurrentRequests > 0 ? Executors.newFixedThreadPool(concurrentRequests,
+				daemonThreadFactory("bulk-indexer")) : null;
+
+		if (builder.flushIntervalMillis > 0) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("bulk-indexer-flush"));
+			this.scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} catch (final Exception e) {
+						logger.warn("Scheduled bulk flush failed", e);
+					}
+				}
+			}, builder.flushIntervalMillis, builder.flushIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			this.scheduler = null;
+		}
+	}
+
+	/**
+	 * Create a builder for an indexer working against the given operations
+	 *
+	 * @param operations
+	 *          the template used to execute the bulk requests
+	 * @return a new {@link Builder}
+	 */
+	public static Builder builder(final NodeOperations operations) {
+		return new Builder(operations);
+	}
+
+	/**
+	 * Add a document to the index of the indexer
+	 *
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id, or null to let Elasticsearch generate one
+	 * @param source
+	 *          the document source
+	 */
+	public void index(final String type, final String id, final XContentBuilder source) {
+		add(Requests.indexRequest(indexName).type(type).id(id).source(source));
+	}
+
+	/**
+	 * Add a JSON document to the index of the indexer
+	 *
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id, or null to let Elasticsearch generate one
+	 * @param json
+	 *          the document source as JSON
+	 */
+	public void index(final String type, final String id, final String json) {
+		add(Requests.indexRequest(indexName).type(type).id(id).source(json));
+	}
+
+	/**
+	 * Add a partial update of an existing document of the index of the indexer
+	 *
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id
+	 * @param partialDocument
+	 *          the fields to merge into the document
+	 */
+	public void update(final String type, final String id, final XContentBuilder partialDocument) {
+		add(new UpdateRequest(indexName, type, id).doc(partialDocument).retryOnConflict(retryOnConflict));
+	}
+
+	/**
+	 * Add a partial update of a document of the index of the indexer, indexed
+	 * as a new document if it does not exist
+	 *
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id
+	 * @param document
+	 *          the fields to merge into the document, or the whole document
+	 */
+	public void upsert(final String type, final String id, final XContentBuilder document) {
+		final UpdateRequest request = new UpdateRequest(indexName, type, id).doc(document)
+				.retryOnConflict(retryOnConflict);
+		request.docAsUpsert(true);
+		add(request);
+	}
+
+	/**
+	 * Add a single action (index, delete or update request)
+	 *
+	 * @param request
+	 *          the action to add to the current batch
+	 */
+	public synchronized void add(final ActionRequest<?> request) {
+		Assert.state(!closed, "bulk indexer is closed");
+
+		bulkRequest.add(request);
+		if (bulkRequest.numberOfActions() >= bulkActions
+				|| (bulkSizeBytes > 0 && bulkRequest.estimatedSizeInBytes() >= bulkSizeBytes)) {
+			executeCurrent();
+		}
+	}
+
+	/**
+	 * Add a stream of actions, blocking whenever the maximum number of
+	 * concurrent bulk requests is in flight
+	 *
+	 * @param requests
+	 *          the actions to add
+	 */
+	public void addAll(final Iterator<? extends ActionRequest<?>> requests) {
+		while (requests.hasNext()) {
+			add(requests.next());
+		}
+	}
+
+	/**
+	 * Send the current batch, if any, without waiting for it to complete
+	 */
+	public synchronized void flush() {
+		if (bulkRequest.numberOfActions() > 0) {
+			executeCurrent();
+		}
+	}
+
+	/**
+	 * Flush the current batch and wait up to the given time for all in-flight
+	 * batches to complete
+	 *
+	 * @return true if all batches completed in time
+	 */
+	public boolean awaitClose(final long timeout, final TimeUnit unit) throws InterruptedException {
+		synchronized (this) {
+			if (closed) {
+				return true;
+			}
+			flush();
+			closed = true;
+		}
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+
+		final int permits = Math.max(1, concurrentRequests);
+		final boolean completed = inFlight.tryAcquire(permits, timeout, unit);
+		if (completed) {
+			inFlight.release(permits);
+		}
+		if (executor != null) {
+			executor.shutdown();
+		}
+		return completed;
+	}
+
+	/**
+	 * Flush the current batch and wait for all in-flight batches
+	 */
+	@Override
+	public void close() {
+		try {
+			awaitClose(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getTotalActions() {
+		return totalActions.get();
+	}
+
+	public long getTotalFailures() {
+		return totalFailures.get();
+	}
+
+	public long getTotalRetries() {
+		return totalRetries.get();
+	}
+
+	private void executeCurrent() {
+		final BulkRequest request = bulkRequest;
+		bulkRequest = new BulkRequest();
+		final long batchId = batchIds.incrementAndGet();
+
+		try {
+			inFlight.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reportFailedBatch(batchId, request, e);
+			return;
+		}
+
+		if (executor == null) {
+			try {
+				execute(batchId, request);
+			} finally {
+				inFlight.release();
+			}
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					execute(batchId, request);
+				} finally {
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	private void execute(final long batchId, final BulkRequest request) {
+		final long start = System.currentTimeMillis();
+		final int actions = request.numberOfActions();
+		final long sizeInBytes = request.estimatedSizeInBytes();
+
+		BulkRequest pending = request;
+		int failures = 0;
+		int retries = 0;
+		long tookInMillis = 0;
+
+		for (int attempt = 0;; attempt++) {
+			final BulkRequest current = pending;
+			BulkRequest retry = null;
+			try {
+				final BulkResponse response = operations.executeGet(new ClientCallback<BulkResponse>() {
+					@Override
+					public ActionFuture<BulkResponse> execute(final Client client) {
+						return client.bulk(current);
+					}
+				});
+				tookInMillis += response.getTookInMillis();
+
+				if (response.hasFailures()) {
+					final List<ActionRequest> requests = current.requests();
+					for (final BulkItemResponse item : response.getItems()) {
+						if (!item.isFailed()) {
+							continue;
+						}
+						if (attempt < maxRetries && isRejection(item.getFailureMessage())) {
+							if (retry == null) {
+								retry = new BulkRequest();
+							}
+							retry.add(requests.get(item.getItemId()));
+						} else {
+							failures++;
+							logger.debug("Bulk item [" + item.getId() + "] failed: " + item.getFailureMessage());
+						}
+					}
+				}
+			} catch (final RuntimeException e) {
+				if (attempt < maxRetries && ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+					retry = current;
+				} else {
+					logger.warn("Bulk request [" + batchId + "] failed", e);
+					failures += current.numberOfActions();
+				}
+			}
+
+			if (retry == null) {
+				break;
+			}
+			retries += retry.numberOfActions();
+			pending = retry;
+			if (!backoff(attempt)) {
+				failures += retry.numberOfActions();
+				break;
+			}
+		}
+
+		if (failures < actions) {
+			notifyIndicesChanged(request);
+		}
+		report(new BatchStats(batchId, actions, sizeInBytes, failures, retries, tookInMillis,
+				System.currentTimeMillis() - start));
+	}
+
+	private void notifyIndicesChanged(final BulkRequest request) {
+		final Set<String> indices = new HashSet<String>();
+		for (final ActionRequest<?> action : request.requests()) {
+			if (action instanceof IndexRequest) {
+				indices.add(((IndexRequest) action).index());
+			} else if (action instanceof DeleteRequest) {
+				indices.add(((DeleteRequest) action).index());
+			} else if (action instanceof UpdateRequest) {
+				indices.add(((UpdateRequest) action).index());
+			}
+		}
+		for (final String index : indices) {
+			operations.notifyIndexChanged(index);
+		}
+	}
+
+	private boolean backoff(final int attempt) {
+		try {
+			Thread.sleep(initialBackoffMillis << attempt);
+			return true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * A bulk item failure only carries the failure message and a status; in
+	 * Elasticsearch 1.x a full queue is reported as SERVICE_UNAVAILABLE, which
+	 * other failures share, so the rejection is recognized by its exception name
+	 */
+	private static boolean isRejection(final String failureMessage) {
+		return failureMessage != null && failureMessage.contains(EsRejectedExecutionException.class.getSimpleName());
+	}
+
+	private void reportFailedBatch(final long batchId, final BulkRequest request, final Exception e) {
+		logger.warn("Bulk request [" + batchId + "] was not sent", e);
+		report(new BatchStats(batchId, request.numberOfActions(), request.estimatedSizeInBytes(),
+				request.numberOfActions(), 0, 0, 0));
+	}
+
+	private void report(final BatchStats stats) {
+		totalActions.addAndGet(stats.getActions());
+		totalFailures.addAndGet(stats.getFailures());
+		totalRetries.addAndGet(stats.getRetries());
+
+		if (logger.isDebugEnabled()) {
+			logger.debug(stats.toString());
+		}
+		if (listener != null) {
+			try {
+				listener.afterBulk(stats);
+			} catch (final RuntimeException e) {
+				logger.warn("Bulk listener failed", e);
+			}
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(final String name) {
+		final AtomicInteger sequence = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, name + "-" + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * The outcome of a single batch
+	 */
+	public static class BatchStats {
+
+		private final long batchId;
+
+		private final int actions;
+
+		private final long sizeInBytes;
+
+		private final int failures;
+
+		private final int retries;
+
+		private final long tookInMillis;
+
+		private final long elapsedInMillis;
+
+		BatchStats(final long batchId, final int actions, final long sizeInBytes, final int failures,
+				final int retries, final long tookInMillis, final long elapsedInMillis) {
+			this.batchId = batchId;
+			this.actions = actions;
+			this.sizeInBytes = sizeInBytes;
+			this.failures = failures;
+			this.retries = retries;
+			this.tookInMillis = tookInMillis;
+			this.elapsedInMillis = elapsedInMillis;
+		}
+
+		public long getBatchId() {
+			return batchId;
+		}
+
+		public int getActions() {
+			return actions;
+		}
+
+		public long getSizeInBytes() {
+			return sizeInBytes;
+		}
+
+		/**
+		 * @return the number of actions which failed after all retries
+		 */
+		public int getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return the number of rejected actions which were re-sent
+		 */
+		public int getRetries() {
+			return retries;
+		}
+
+		/**
+		 * @return the sum of the server side "took" times of all attempts
+		 */
+		public long getTookInMillis() {
+			return tookInMillis;
+		}
+
+		/**
+		 * @return the client observed time including retries and backoff
+		 */
+		public long getElapsedInMillis() {
+			return elapsedInMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "Bulk [" + batchId + "]: actions=" + actions + ", bytes=" + sizeInBytes + ", failures=" + failures
+					+ ", retries=" + retries + ", took=" + tookInMillis + "ms, elapsed=" + elapsedInMillis + "ms";
+		}
+	}
+
+	/**
+	 * A builder for {@link BulkIndexer}
+	 */
+	public static class Builder {
+
+		private final NodeOperations operations;
+
+		private String indexName;
+
+		private int bulkActions = 1000;
+
+		private long bulkSizeBytes = 5 * 1024 * 1024;
+
+		private long flushIntervalMillis = 0;
+
+		private int concurrentRequests = 1;
+
+		private int maxRetries = 3;
+
+		private long initialBackoffMillis = 100;
+
+		private int retryOnConflict = 3;
+
+		private Listener listener;
+
+		Builder(final NodeOperations operations) {
+			Assert.notNull(operations, "operations cannot be null");
+			this.operations = operations;
+		}
+
+		/**
+		 * Index the convenience methods of the indexer add documents to (default
+		 * the index of the template)
+		 */
+		public Builder setIndexName(final String indexName) {
+			this.indexName = indexName;
+			return this;
+		}
+
+		/**
+		 * Number of actions after which a batch is sent (default 1000)
+		 */
+		public Builder setBulkActions(final int bulkActions) {
+			this.bulkActions = bulkActions;
+			return this;
+		}
+
+		/**
+		 * Estimated batch size in bytes after which a batch is sent (default 5mb,
+		 * 0 to disable)
+		 */
+		public Builder setBulkSizeBytes(final long bulkSizeBytes) {
+			this.bulkSizeBytes = bulkSizeBytes;
+			return this;
+		}
+
+		/**
+		 * Interval after which a non empty batch is sent regardless of its size (0,
+		 * the default, to disable)
+		 */
+		public Builder setFlushIntervalMillis(final long flushIntervalMillis) {
+			this.flushIntervalMillis = flushIntervalMillis;
+			return this;
+		}
+
+		/**
+		 * Number of batches allowed in flight while new documents are accumulated
+		 * (default 1, 0 to execute batches in the calling thread)
+		 */
+		public Builder setConcurrentRequests(final int concurrentRequests) {
+			this.concurrentRequests = concurrentRequests;
+			return this;
+		}
+
+		/**
+		 * Number of times rejected actions are retried (default 3)
+		 */
+		public Builder setMaxRetries(final int maxRetries) {
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+		/**
+		 * Backoff before the first retry, doubled on every further retry (default
+		 * 100ms)
+		 */
+		public Builder setInitialBackoffMillis(final long initialBackoffMillis) {
+			this.initialBackoffMillis = initialBackoffMillis;
+			return this;
+		}
+
+		/**
+		 * Number of times an update is retried on the shard when the document
+		 * changes concurrently (default 3)
+		 */
+		public Builder setRetryOnConflict(final int retryOnConflict) {
+			this.retryOnConflict = retryOnConflict;
+			return this;
+		}
+
+		public Builder setListener(final Listener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		public BulkIndexer build() {
+			return new BulkIndexer(this);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package org.projectx.elasticsearch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.admin.indices.optimize.OptimizeResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsResponse;
+import org.elasticsearch.client.ClusterAdminClient;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A bulk load of an index, typically right after it was created for a rebuild.
+ * <p>
+ * Starting the session disables refreshes (<code>refresh_interval=-1</code>)
+ * and replication (<code>number_of_replicas=0</code>) on the index, so the
+ * load only pays for indexing each document once on its primary shard.
+ * Documents are loaded through {@link #indexer(BulkIndexer.Builder) indexers}
+ * created by the session, bound to the loaded index. {@link #finish()} closes
+ * the indexers, restores the original settings, refreshes, optionally
+ * optimizes the index down to {@link #setMaxNumSegments(int) maxNumSegments}
+ * segments and waits for all primary shards of the index to be active (yellow
+ * health), timing every phase in a {@link Report}. The restored replicas are
+ * allocated in the background; a green wait would never complete on a cluster
+ * with fewer nodes than copies of a shard.
+ * <p>
+ * Until the session is finished the loaded documents are neither searchable
+ * nor replicated, so always finish the session, e.g. in a finally block
+ * through {@link #close()}, or {@link #abort()} it when the index is dropped
+ * anyway.
+ */
+public class BulkLoadSession implements Closeable {
+
+	private static Logger logger = LoggerFactory.getLogger(BulkLoadSession.class);
+
+	private static final String REFRESH_INTERVAL = "index.refresh_interval";
+
+	private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+	private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
+	private final NodeOperations operations;
+
+	private final String indexName;
+
+	private final String refreshInterval;
+
+	private final int numberOfReplicas;
+
+	private final List<BulkIndexer> indexers = new ArrayList<BulkIndexer>();
+
+	private final long startedAt;
+
+	private final long prepareMillis;
+
+	private int maxNumSegments = 0;
+
+	private long healthTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
+
+	private Report report;
+
+	private boolean aborted = false;
+
+	/**
+	 * Start a bulk load, changing the settings of the index right away
+	 * 
+	 * @param operations
+	 *          the template to load through
+	 * @param indexName
+	 *          the index to load
+	 */
+	public BulkLoadSession(final NodeOperations operations, final String indexName) {
+		Assert.notNull(operations, "operations cannot be null");
+		Assert.hasText(indexName, "indexName cannot be empty");
+
+		this.operations = operations;
+		this.indexName = indexName;
+		this.startedAt = System.currentTimeMillis();
+
+		// the index metadata holds the effective number of replicas even when the
+		// index was created without setting it
+		final ClusterStateResponse state = operations.executeGet(new ClusterCallback<ClusterStateResponse>() {
+			@Override
+			public ActionFuture<ClusterStateResponse> execute(final ClusterAdminClient admin) {
+				return admin.state(Requests.clusterStateRequest().clear().metaData(true).indices(indexName));
+			}
+		});
+		final IndexMetaData metaData = state.getState().metaData().index(indexName);
+		Assert.notNull(metaData, "index [" + indexName + "] does not exist");
+		this.refreshInterval = metaData.settings().get(REFRESH_INTERVAL);
+		this.numberOfReplicas = metaData.numberOfReplicas();
+
+		updateSettings(ImmutableSettings.settingsBuilder().put(REFRESH_INTERVAL, "-1").put(NUMBER_OF_REPLICAS, 0)
+				.build());
+		this.prepareMillis = System.currentTimeMillis() - startedAt;
+	}
+
+	/**
+	 * Create an indexer which adds documents to the loaded index and is closed
+	 * when the session finishes
+	 * 
+	 * @param builder
+	 *          the configuration of the indexer
+	 * @return the indexer
+	 */
+	public synchronized BulkIndexer indexer(final BulkIndexer.Builder builder) {
+		Assert.state(report == null, "bulk load session is finished");
+		Assert.state(!aborted, "bulk load session is aborted");
+
+		final BulkIndexer indexer = builder.setIndexName(indexName).build();
+		indexers.add(indexer);
+		return indexer;
+	}
+
+	/**
+	 * Flush the indexers, restore the index settings, refresh, optimize if
+	 * requested and wait for the primary shards of the index to be active
+	 * 
+	 * @return the report of the load
+	 */
+	public synchronized Report finish() {
+		if (report != null) {
+			return report;
+		}
+		Assert.state(!aborted, "bulk load session is aborted");
+
+		long documents = 0;
+		long failures = 0;
+		try {
+			for (final BulkIndexer indexer : indexers) {
+				indexer.close();
+				documents += indexer.getTotalActions();
+				failures += indexer.getTotalFailures();
+			}
+		} finally {
+			final long loadMillis = System.currentTimeMillis() - startedAt - prepareMillis;
+
+			final long restoreStart = System.currentTimeMillis();
+			updateSettings(ImmutableSettings.settingsBuilder()
+					.put(REFRESH_INTERVAL, refreshInterval == null ? DEFAULT_REFRESH_INTERVAL : refreshInterval)
+					.put(NUMBER_OF_REPLICAS, numberOfReplicas).build());
+			final long restoreMillis = System.currentTimeMillis() - restoreStart;
+
+			final long refreshStart = System.currentTimeMillis();
+			operations.refreshIndex(indexName);
+			final long refreshMillis = System.currentTimeMillis() - refreshStart;
+
+			final long optimizeStart = System.currentTimeMillis();
+			if (maxNumSegments > 0) {
+				operations.executeGet(new NodeCallback<OptimizeResponse>() {
+					@Override
+					public ActionFuture<OptimizeResponse> execute(final IndicesAdminClient admin) {
+						return admin.optimize(Requests.optimizeRequest(indexName).maxNumSegments(maxNumSegments));
+					}
+				});
+			}
+			final long optimizeMillis = System.currentTimeMillis() - optimizeStart;
+
+			final long healthStart = System.currentTimeMillis();
+			final ClusterHealthResponse health = operations.executeGet(new ClusterCallback<ClusterHealthResponse>() {
+				@Override
+				public ActionFuture<ClusterHealthResponse> execute(final ClusterAdminClient admin) {
+					return admin.health(Requests.clusterHealthRequest(indexName).waitForYellowStatus()
+							.timeout(TimeValue.timeValueMillis(healthTimeoutMillis)));
+				}
+			});
+			final long healthMillis = System.currentTimeMillis() - healthStart;
+
+			report = new Report(indexName, documents, failures, prepareMillis, loadMillis, restoreMillis, refreshMillis,
+					optimizeMillis, healthMillis, health.getStatus());
+			logger.info(report.toString());
+		}
+		return report;
+	}
+
+	/**
+	 * Stop the indexers without restoring the settings, refreshing or waiting
+	 * for the index, for a load whose index is about to be deleted
+	 */
+	public synchronized void abort() {
+		if (report != null || aborted) {
+			return;
+		}
+		aborted = true;
+		for (final BulkIndexer indexer : indexers) {
+			try {
+				indexer.close();
+			} catch (final RuntimeException e) {
+				logger.warn("Closing an indexer of the aborted bulk load of [" + indexName + "] failed", e);
+			}
+		}
+		logger.info("Bulk load of [" + indexName + "] aborted");
+	}
+
+	/**
+	 * Finish the session if it was neither finished nor aborted yet
+	 */
+	@Override
+	public synchronized void close() {
+		if (!aborted) {
+			finish();
+		}
+	}
+
+	/**
+	 * Optimize the index down to this number of segments when finishing, 0 (the
+	 * default) to skip optimizing
+	 */
+	public void setMaxNumSegments(final int maxNumSegments) {
+		this.maxNumSegments = maxNumSegments;
+	}
+
+	/**
+	 * How long to wait for the primary shards of the index to be active when
+	 * finishing (default 1 minute)
+	 */
+	public void setHealthTimeoutMillis(final long healthTimeoutMillis) {
+		this.healthTimeoutMillis = healthTimeoutMillis;
+	}
+
+	private void updateSettings(final Settings settings) {
+		operations.executeGet(new NodeCallback<UpdateSettingsResponse>() {
+			@Override
+			public ActionFuture<UpdateSettingsResponse> execute(final IndicesAdminClient admin) {
+				return admin.updateSettings(Requests.updateSettingsRequest(indexName).settings(settings));
+			}
+		});
+	}
+
+	/**
+	 * The timed outcome of a bulk load
+	 */
+	public static class Report {
+
+		private final String indexName;
+
+		private final long documents;
+
+		private final long failures;
+
+		private final long prepareMillis;
+
+		private final long loadMillis;
+
+		private final long restoreMillis;
+
+		private final long refreshMillis;
+
+		private final long optimizeMillis;
+
+		private final long healthMillis;
+
+		private final ClusterHealthStatus status;
+
+		Report(final String indexName, final long documents, final long failures, final long prepareMillis,
+				final long loadMillis, final long restoreMillis, final long refreshMillis, final long optimizeMillis,
+				final long healthMillis, final ClusterHealthStatus status) {
+			this.indexName = indexName;
+			this.documents = documents;
+			this.failures = failures;
+			this.prepareMillis = prepareMillis;
+			this.loadMillis = loadMillis;
+			this.restoreMillis = restoreMillis;
+			this.refreshMillis = refreshMillis;
+			this.optimizeMillis = optimizeMillis;
+			this.healthMillis = healthMillis;
+			this.status = status;
+		}
+
+		public String getIndexName() {
+			return indexName;
+		}
+
+		/**
+		 * @return the number of actions sent by the session's indexers
+		 */
+		public long getDocuments() {
+			return documents;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		public long getPrepareMillis() {
+			return prepareMillis;
+		}
+
+		/**
+		 * @return the time from the start of the session until all indexers were
+		 *         flushed
+		 */
+		public long getLoadMillis() {
+			return loadMillis;
+		}
+
+		public long getRestoreMillis() {
+			return restoreMillis;
+		}
+
+		public long getRefreshMillis() {
+			return refreshMillis;
+		}
+
+		public long getOptimizeMillis() {
+			return optimizeMillis;
+		}
+
+		public long getHealthMillis() {
+			return healthMillis;
+		}
+
+		public long getTotalMillis() {
+			return prepareMillis + loadMillis + restoreMillis + refreshMillis + optimizeMillis + healthMillis;
+		}
+
+		/**
+		 * @return the health of the index when the session finished, red if the
+		 *         wait timed out
+		 */
+		public ClusterHealthStatus getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return the loaded documents per second over the whole session
+		 */
+		public double getDocumentsPerSecond() {
+			final long total = getTotalMillis();
+			return total == 0 ? documents : documents * 1000.0 / total;
+		}
+
+		@Override
+		public String toString() {
+			return "Bulk load of [" + indexName + "]: documents=" + documents + ", failures=" + failures + ", prepare="
+					+ prepareMillis + "ms, load=" + loadMillis + "ms, restore=" + restoreMillis + "ms, refresh="
+					+ refreshMillis + "ms, optimize=" + optimizeMillis + "ms, health=" + healthMillis + "ms, status="
+					+ status + ", total=" + getTotalMillis() + "ms";
+		}
+	}
+
+}
@@ -1,44 +1,88 @@
 package org.projectx.elasticsearch;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionResponse;
-import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
-import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
 import org.elasticsearch.action.admin.indices.close.CloseIndexResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
 import org.elasticsearch.action.admin.indices.flush.FlushResponse;
 //import org.elasticsearch.action.admin.indices.gateway.snapshot.GatewaySnapshotResponse;
 import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
-import org.elasticsearch.action.admin.indices.status.IndicesStatusResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.suggest.SuggestResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.ClusterAdminClient;
 import org.elasticsearch.client.IndicesAdminClient;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 //import org.elasticsearch.index.query.FieldQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.search.aggregations.bucket.range.RangeBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestionBuilder;
+import org.projectx.index.HitIterator;
 import org.projectx.index.IndexSearchEngine;
+import org.projectx.index.SearchOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperations {
 	
-	private Client client;
+	private static Logger logger = LoggerFactory.getLogger(ClientTemplate.class);
+	
+	private static final String SUGGESTION = "completion";
+	
+	private static final String AGGREGATION = "aggregation";
+	
+	private final Client client;
 	
 	private final String indexName;
 	
+	/**
+	 * index names known to exist, mapped to the time the knowledge expires
+	 */
+	private final ConcurrentMap<String, Long> knownIndices = new ConcurrentHashMap<String, Long>();
+	
+	private long indexExistsCacheMillis = 5000;
+	
+	private TimeValue scrollKeepAlive = TimeValue.timeValueMinutes(1);
+	
+	private SourceReader sourceReader = new SourceReader();
+	
+	private int retryOnConflict = 3;
+	
+	private final List<IndexChangeListener> indexChangeListeners = new CopyOnWriteArrayList<IndexChangeListener>();
+	
+	private final List<OperationInterceptor> operationInterceptors = new CopyOnWriteArrayList<OperationInterceptor>();
+	
 	public ClientTemplate(Client client) {
 		Assert.notNull(client, "transportClient cannot be null");
 		
@@ -72,6 +116,20 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 				return admin.create(request);
 			}
 		});
+		if (indexExistsCacheMillis > 0) {
+			knownIndices.put(indexName, System.currentTimeMillis() + indexExistsCacheMillis);
+		}
+	}
+	
+	/**
+	 * Rebuild the template's index without downtime, treating the index name
+	 * of the template as an alias
+	 * 
+	 * @see AliasReindexer
+	 * @return the name of the new physical index
+	 */
+	public String reindex(final String indexType, final Settings settings, final XContentBuilder mapping) {
+		return new AliasReindexer(this, indexName).reindex(indexType, settings, mapping);
 	}
 	
 	@Override
@@ -79,23 +137,46 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 		return indexExists(indexName);
 	}
 	
+	/**
+	 * Check if the index exists using the indices exists API. Positive answers
+	 * are cached for {@link #setIndexExistsCacheMillis(long) a short time},
+	 * negative answers are never cached so a newly created index is seen
+	 * immediately. Indices deleted through this template are forgotten right
+	 * away, indices deleted elsewhere may be reported as existing until the
+	 * cached answer expires.
+	 */
 	@Override
-	public boolean indexExists(String indexName) {
-		executeGet(new ClusterCallback<ClusterHealthResponse>() {
-			@Override
-			public ActionFuture<ClusterHealthResponse> execute(ClusterAdminClient admin) {
-				return admin.health(Requests.clusterHealthRequest(new String[0]).waitForStatus(ClusterHealthStatus.YELLOW));
+	public boolean indexExists(final String indexName) {
+		Long expireAt = knownIndices.get(indexName);
+		if (expireAt != null) {
+			if (System.currentTimeMillis() < expireAt) {
+				return true;
 			}
-		});
+			knownIndices.remove(indexName, expireAt);
+		}
 		
-		IndicesStatusResponse response = (IndicesStatusResponse) executeGet(new NodeCallback<IndicesStatusResponse>() {
+		IndicesExistsResponse response = executeGet(new NodeCallback<IndicesExistsResponse>() {
 			@Override
-			public ActionFuture<IndicesStatusResponse> execute(IndicesAdminClient admin) {
-				return admin.status(Requests.indicesStatusRequest(new String[0]));
+			public ActionFuture<IndicesExistsResponse> execute(IndicesAdminClient admin) {
+				return admin.exists(Requests.indicesExistsRequest(indexName));
 			}
 		});
 		
-		return response.getIndices().get(indexName) != null;
+		if (response.isExists() && indexExistsCacheMillis > 0) {
+			knownIndices.put(indexName, System.currentTimeMillis() + indexExistsCacheMillis);
+		}
+		return response.isExists();
+	}
+	
+	/**
+	 * Set how long a positive {@link #indexExists(String)} answer is cached, 0
+	 * disables caching (default 5000)
+	 * 
+	 * @param indexExistsCacheMillis
+	 *          the time to live of a cached answer in milliseconds
+	 */
+	public void setIndexExistsCacheMillis(long indexExistsCacheMillis) {
+		this.indexExistsCacheMillis = indexExistsCacheMillis;
 	}
 	
 	@Override
@@ -105,12 +186,17 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 	
 	@Override
 	public void deleteIndex(final String indexName) {
-		executeGet(new NodeCallback<DeleteIndexResponse>() {
-			@Override
-			public ActionFuture<DeleteIndexResponse> execute(IndicesAdminClient admin) {
-				return admin.delete(Requests.deleteIndexRequest(indexName));
-			}
-		});
+		try {
+			executeGet(new NodeCallback<DeleteIndexResponse>() {
+				@Override
+				public ActionFuture<DeleteIndexResponse> execute(IndicesAdminClient admin) {
+					return admin.delete(Requests.deleteIndexRequest(indexName));
+				}
+			});
+		} finally {
+			knownIndices.remove(indexName);
+			notifyIndexChanged(indexName);
+		}
 	}
 	
 	@Override
@@ -128,6 +214,7 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 				return admin.refresh(Requests.refreshRequest(new String[] { indexName }));
 			}
 		});
+		notifyIndexChanged(indexName);
 	}
 
 	@Override
@@ -160,6 +247,16 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 		});
 	}
 
+	@Override
+	public BulkLoadSession beginBulkLoad() {
+		return beginBulkLoad(indexName);
+	}
+	
+	@Override
+	public BulkLoadSession beginBulkLoad(String indexName) {
+		return new BulkLoadSession(this, indexName);
+	}
+
 	@Override
 	@Deprecated
 	public void snapshotIndex() {
@@ -177,67 +274,595 @@ public class ClientTemplate implements IndexSearchEngine<SearchHit>, NodeOperati
 //		});
 	}
 
+	/**
+	 * Prepare an update of a document of the template's index, retrying
+	 * {@link #setRetryOnConflict(int) on version conflicts}. The request may be
+	 * completed with a partial document, an upsert document or a script
+	 * 
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id
+	 * @return the update request, to execute with {@link #update(UpdateRequest)}
+	 */
+	public UpdateRequest prepareUpdate(String type, String id) {
+		return new UpdateRequest(indexName, type, id).retryOnConflict(retryOnConflict);
+	}
+
+	/**
+	 * Merge a partial document into an existing document, only the changed
+	 * fields are sent and the merge happens on the shard
+	 * 
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id
+	 * @param partialDocument
+	 *          the fields to set
+	 * @return the update response
+	 * @throws org.elasticsearch.index.engine.DocumentMissingException
+	 *           if the document does not exist
+	 */
+	public UpdateResponse update(String type, String id, XContentBuilder partialDocument) {
+		return update(prepareUpdate(type, id).doc(partialDocument));
+	}
+
+	/**
+	 * Merge a partial document into a document, indexing it as a new document
+	 * if it does not exist
+	 * 
+	 * @param type
+	 *          the document type
+	 * @param id
+	 *          the document id
+	 * @param document
+	 *          the fields to set, or the whole document if missing
+	 * @return the update response, created if the document was missing
+	 */
+	public UpdateResponse upsert(String type, String id, XContentBuilder document) {
+		UpdateRequest request = prepareUpdate(type, id).doc(document);
+		request.docAsUpsert(true);
+		return update(request);
+	}
+
+	/**
+	 * Execute an update request. The index change listeners are not notified,
+	 * the update becomes searchable (and cached searches are invalidated) on
+	 * the next refresh
+	 * 
+	 * @param request
+	 *          the update request
+	 * @return the update response
+	 */
+	public UpdateResponse update(final UpdateRequest request) {
+		return update(request, false);
+	}
+
+	/**
+	 * Execute an update request
+	 * 
+	 * @param request
+	 *          the update request
+	 * @param notify
+	 *          whether to notify the index change listeners, e.g. when the
+	 *          request asks for a refresh
+	 * @return the update response
+	 */
+	public UpdateResponse update(final UpdateRequest request, final boolean notify) {
+		UpdateResponse response = executeGet(OperationInterceptor.CLIENT, request, new ClientCallback<UpdateResponse>() {
+			@Override
+			public ActionFuture<UpdateResponse> execute(Client client) {
+				return client.update(request);
+			}
+		});
+		if (notify) {
+			notifyIndexChanged(request.index());
+		}
+		return response;
+	}
+
+	/**
+	 * Set how many times an update is retried on the shard when the document
+	 * changes between its get and its reindex (default 3)
+	 * 
+	 * @param retryOnConflict
+	 *          the number of retries
+	 */
+	public void setRetryOnConflict(int retryOnConflict) {
+		this.retryOnConflict = retryOnConflict;
+	}
+
 	@Override
 	public <Q> List<SearchHit> search(String field, Q query, int maxResults) {
 		// for 0.20
 //		FieldQueryBuilder qb = QueryBuilders.fieldQuery(field, query);
 		QueryBuilder qb = QueryBuilders.queryString(String.valueOf(query)).field(field);
-		return searchInternal(qb, maxResults);
+		return search(qb, new SearchOptions().size(maxResults));
 	}
 
 	@Override
 	public List<SearchHit> search(String queryString, int maxResults) {
 		QueryStringQueryBuilder query = QueryBuilders.queryString(queryString);
-		return searchInternal(query, maxResults);
+		return search(query, new SearchOptions().size(maxResults));
+	}
+
+	@Override
+	public List<SearchHit> search(String queryString, SearchOptions options) {
+		return search(QueryBuilders.queryString(queryString), options);
 	}
 
-	private List<SearchHit> searchInternal(final QueryBuilder query, final int maxResults) {
-		SearchResponse response = executeGet(new ClientCallback<SearchResponse>() {
+	/**
+	 * Search with any query, by default a {@link SearchType#QUERY_THEN_FETCH}
+	 * against the template's index
+	 * 
+	 * @param query
+	 *          the query
+	 * @param options
+	 *          the search options
+	 * @return a list of hits
+	 */
+	public List<SearchHit> search(final QueryBuilder query, final SearchOptions options) {
+		final SearchRequest request = searchRequest(query, options);
+		SearchResponse response = executeGet(OperationInterceptor.SEARCH, request, new ClientCallback<SearchResponse>() {
 			@Override
 			public ActionFuture<SearchResponse> execute(Client client) {
-				SearchRequest request = Requests.searchRequest(new String[0]).searchType(SearchType.DFS_QUERY_AND_FETCH);
-				SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
-				sourceBuilder.query(query).size(maxResults);
-				
-				request.source(sourceBuilder);
 				return client.search(request);
 			}
 		});
 		return Arrays.asList(response.getHits().getHits());
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public <T extends ActionResponse> T executeGet(NodeCallback<T> callback) {
-		IndicesAdminClient indicesAdmin = this.client.admin().indices();
-		ActionFuture<T> action = callback.execute(indicesAdmin);
-		ActionResponse response = (ActionResponse) action.actionGet();
+	public <R> List<R> search(String queryString, SearchOptions options, Class<R> type) {
+		return search(QueryBuilders.queryString(queryString), options, type);
+	}
+
+	/**
+	 * Search with any query and map the source of each hit to the requested type
+	 * 
+	 * @see SourceReader
+	 */
+	public <R> List<R> search(QueryBuilder query, SearchOptions options, Class<R> type) {
+		List<SearchHit> hits = search(query, options);
+		List<R> results = new ArrayList<R>(hits.size());
+		for (SearchHit hit : hits) {
+			results.add(sourceReader.read(hit, type));
+		}
+		return results;
+	}
+
+	/**
+	 * Set the reader mapping hit sources in typed searches, e.g. to use a
+	 * customized Jackson <code>ObjectMapper</code>
+	 * 
+	 * @param sourceReader
+	 *          the source reader
+	 */
+	public void setSourceReader(SourceReader sourceReader) {
+		Assert.notNull(sourceReader, "sourceReader cannot be null");
+		this.sourceReader = sourceReader;
+	}
+
+	/**
+	 * Search without blocking the calling thread
+	 * 
+	 * @see #search(String, Object, int)
+	 */
+	public <Q> ListenableResponseFuture<SearchResponse> searchAsync(String field, Q query, int maxResults) {
+		QueryBuilder qb = QueryBuilders.queryString(String.valueOf(query)).field(field);
+		return searchAsync(qb, new SearchOptions().size(maxResults));
+	}
+
+	/**
+	 * Search without blocking the calling thread
+	 * 
+	 * @see #search(String, int)
+	 */
+	public ListenableResponseFuture<SearchResponse> searchAsync(String queryString, int maxResults) {
+		return searchAsync(QueryBuilders.queryString(queryString), new SearchOptions().size(maxResults));
+	}
+
+	/**
+	 * Search without blocking the calling thread
+	 * 
+	 * @see #search(QueryBuilder, SearchOptions)
+	 */
+	public ListenableResponseFuture<SearchResponse> searchAsync(final QueryBuilder query, final SearchOptions options) {
+		final SearchRequest request = searchRequest(query, options);
+		return executeAsync(OperationInterceptor.SEARCH, request, new AsyncClientCallback<SearchResponse>() {
+			@Override
+			public void execute(Client client, ActionListener<SearchResponse> listener) {
+				client.search(request, listener);
+			}
+		});
+	}
+
+	/**
+	 * Run aggregations over the documents matching the query without fetching
+	 * any hit, by default a {@link SearchType#COUNT} against the template's
+	 * index. Several aggregations sent together are computed in a single pass
+	 * 
+	 * @param query
+	 *          the query selecting the aggregated documents
+	 * @param options
+	 *          the search options, hits related options are ignored
+	 * @param aggregations
+	 *          the aggregations
+	 * @return the search response holding the aggregations
+	 */
+	public SearchResponse aggregate(final QueryBuilder query, final SearchOptions options,
+			final AbstractAggregationBuilder... aggregations) {
+		final SearchRequest request = searchRequest(query, options);
+		if (options.getSearchType() == null) {
+			request.searchType(SearchType.COUNT);
+		}
+		SearchSourceBuilder aggregationSource = new SearchSourceBuilder().size(0);
+		for (AbstractAggregationBuilder aggregation : aggregations) {
+			aggregationSource.aggregation(aggregation);
+		}
+		request.extraSource(aggregationSource);
+		
+		return executeGet(OperationInterceptor.SEARCH, request, new ClientCallback<SearchResponse>() {
+			@Override
+			public ActionFuture<SearchResponse> execute(Client client) {
+				return client.search(request);
+			}
+		});
+	}
+
+	/**
+	 * Count the matching documents per distinct value of the field
+	 * 
+	 * @param queryString
+	 *          the query string
+	 * @param field
+	 *          the field, usually not analyzed
+	 * @param size
+	 *          the maximum number of values, the most frequent first
+	 * @return the values and their document counts
+	 */
+	public Buckets terms(String queryString, final String field, final int size) {
+		SearchResponse response = aggregate(QueryBuilders.queryString(queryString), new SearchOptions(),
+				AggregationBuilders.terms(AGGREGATION).field(field).size(size));
+		return Buckets.of(response.getAggregations().<Terms> get(AGGREGATION), response.getHits().getTotalHits());
+	}
+
+	/**
+	 * Count the matching documents per fixed size interval of a numeric field
+	 * 
+	 * @param queryString
+	 *          the query string
+	 * @param field
+	 *          the numeric field
+	 * @param interval
+	 *          the interval, buckets are keyed by their lower bound
+	 * @return the intervals and their document counts, in ascending order
+	 */
+	public Buckets histogram(String queryString, final String field, final long interval) {
+		SearchResponse response = aggregate(QueryBuilders.queryString(queryString), new SearchOptions(),
+				AggregationBuilders.histogram(AGGREGATION).field(field).interval(interval));
+		return Buckets.of(response.getAggregations().<Histogram> get(AGGREGATION), response.getHits().getTotalHits());
+	}
+
+	/**
+	 * Count the matching documents per range of a numeric field
+	 * 
+	 * @param queryString
+	 *          the query string
+	 * @param field
+	 *          the numeric field
+	 * @param boundaries
+	 *          the ascending range boundaries, each range includes its lower
+	 *          bound and excludes its upper one, values below the first or from
+	 *          the last boundary are counted in unbounded ranges
+	 * @return the ranges and their document counts, in ascending order
+	 */
+	public Buckets range(String queryString, final String field, final double... boundaries) {
+		Assert.isTrue(boundaries.length > 0, "at least one boundary is required");
+		RangeBuilder range = AggregationBuilders.range(AGGREGATION).field(field).addUnboundedTo(boundaries[0]);
+		for (int i = 1; i < boundaries.length; i++) {
+			range.addRange(boundaries[i - 1], boundaries[i]);
+		}
+		range.addUnboundedFrom(boundaries[boundaries.length - 1]);
+		
+		SearchResponse response = aggregate(QueryBuilders.queryString(queryString), new SearchOptions(), range);
+		return Buckets.of(response.getAggregations().<Range> get(AGGREGATION), response.getHits().getTotalHits());
+	}
+
+	/**
+	 * Approximate the number of distinct values of the field among the matching
+	 * documents
+	 * 
+	 * @param queryString
+	 *          the query string
+	 * @param field
+	 *          the field
+	 * @return the approximate count of distinct values
+	 */
+	public long cardinality(String queryString, final String field) {
+		SearchResponse response = aggregate(QueryBuilders.queryString(queryString), new SearchOptions(),
+				AggregationBuilders.cardinality(AGGREGATION).field(field));
+		return response.getAggregations().<Cardinality> get(AGGREGATION).getValue();
+	}
+
+	/**
+	 * Complete a prefix with the completion suggester, the field must be mapped
+	 * with the <code>completion</code> type
+	 * 
+	 * @param field
+	 *          the completion field
+	 * @param prefix
+	 *          the text typed so far
+	 * @param size
+	 *          the maximum number of suggestions
+	 * @return the suggested texts, best first
+	 */
+	public List<String> suggest(final String field, final String prefix, final int size) {
+		SuggestResponse response = executeGet(new ClientCallback<SuggestResponse>() {
+			@Override
+			public ActionFuture<SuggestResponse> execute(Client client) {
+				String[] indices = indexName.length() == 0 ? new String[0] : new String[] { indexName };
+				return client.prepareSuggest(indices)
+						.addSuggestion(new CompletionSuggestionBuilder(SUGGESTION).field(field).text(prefix).size(size))
+						.execute();
+			}
+		});
+		
+		List<String> suggestions = new ArrayList<String>(size);
+		if (response.getSuggest() == null) {
+			return suggestions;
+		}
+		CompletionSuggestion suggestion = response.getSuggest().getSuggestion(SUGGESTION);
+		if (suggestion != null) {
+			for (CompletionSuggestion.Entry entry : suggestion.getEntries()) {
+				for (CompletionSuggestion.Entry.Option option : entry.getOptions()) {
+					suggestions.add(option.getText().string());
+				}
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Create a suggester of the field caching the suggestions of short prefixes
+	 * 
+	 * @see Suggester
+	 * @param field
+	 *          the completion field
+	 * @param maxPrefixLength
+	 *          the longest prefix served from the cache
+	 * @param refreshIntervalMillis
+	 *          how often cached suggestions are refreshed
+	 * @return a new suggester, which must be closed to stop its refresh thread
+	 */
+	public Suggester prepareSuggester(String field, int maxPrefixLength, long refreshIntervalMillis) {
+		return new Suggester(this, field, maxPrefixLength, refreshIntervalMillis);
+	}
+
+	/**
+	 * Start collecting searches to be sent in a single round trip
+	 * 
+	 * @return a new {@link MultiSearch} executed through this template
+	 */
+	public MultiSearch prepareMultiSearch() {
+		return new MultiSearch(this);
+	}
+
+	/**
+	 * Prepare a scan of the whole template index, processing its shards in
+	 * parallel
+	 * 
+	 * @return a new {@link ParallelScan} of the template's index
+	 */
+	public ParallelScan prepareParallelScan() {
+		return new ParallelScan(this, indexName);
+	}
+
+	/**
+	 * Prepare the percolation of documents of a type of the template's index
+	 * against registered queries
+	 * 
+	 * @param documentType
+	 *          the type of the percolated documents
+	 * @return a new {@link Percolator} of the template's index
+	 */
+	public Percolator preparePercolator(String documentType) {
+		return new Percolator(this, documentType);
+	}
+
+	/**
+	 * Stream all matching hits with a scan, in no particular order. As with any
+	 * scan the page size applies per shard
+	 */
+	@Override
+	public HitIterator<SearchHit> scroll(String queryString, int pageSize) {
+		SearchOptions options = new SearchOptions().searchType("scan").size(pageSize);
+		return new ScrollIterator(this, searchRequest(QueryBuilders.queryString(queryString), options), scrollKeepAlive);
+	}
+
+	/**
+	 * Set how long scroll contexts are kept alive between two pages (default 1
+	 * minute)
+	 * 
+	 * @param scrollKeepAliveMillis
+	 *          the keep alive in milliseconds
+	 */
+	public void setScrollKeepAliveMillis(long scrollKeepAliveMillis) {
+		this.scrollKeepAlive = TimeValue.timeValueMillis(scrollKeepAliveMillis);
+	}
 
-		return (T) response;
+	/**
+	 * Build the search request for the query, options left unset default to a
+	 * {@link SearchType#QUERY_THEN_FETCH} against the template's index (all
+	 * indices if the template has none)
+	 */
+	protected SearchRequest searchRequest(final QueryBuilder query, final SearchOptions options) {
+		String[] indices = options.getIndices();
+		if (indices == null) {
+			indices = indexName.length() == 0 ? new String[0] : new String[] { indexName };
+		}
+		
+		SearchRequest request = Requests.searchRequest(indices);
+		request.searchType(options.getSearchType() == null ? SearchType.QUERY_THEN_FETCH
+				: SearchType.fromString(options.getSearchType()));
+		if (options.getTypes() != null)
+			request.types(options.getTypes());
+		if (options.getRouting() != null)
+			request.routing(options.getRouting());
+		if (options.getPreference() != null)
+			request.preference(options.getPreference());
+		
+		SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+		sourceBuilder.query(query).from(options.getFrom()).size(options.getSize());
+		if (options.getFields() != null)
+			sourceBuilder.fields(options.getFields());
+		if (options.getSourceFields() != null)
+			sourceBuilder.fetchSource(options.getSourceFields(), null);
+		for (SearchOptions.Sort sort : options.getSorts())
+			sourceBuilder.sort(sort.getField(), sort.isAscending() ? SortOrder.ASC : SortOrder.DESC);
+		if (options.getTimeoutMillis() > 0)
+			sourceBuilder.timeout(TimeValue.timeValueMillis(options.getTimeoutMillis()));
+		
+		request.source(sourceBuilder);
+		return request;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public <T extends ActionResponse> T executeGet(ClusterCallback<T> callback) {
-		ClusterAdminClient clusterAdmin = this.client.admin().cluster();
-		ActionFuture<T> action = callback.execute(clusterAdmin);
-		ActionResponse response = (ActionResponse) action.actionGet();
+	public <T extends ActionResponse> T executeGet(final NodeCallback<T> callback) {
+		long start = System.nanoTime();
+		try {
+			T response = callback.execute(this.client.admin().indices()).actionGet();
+			afterOperation(OperationInterceptor.INDICES_ADMIN, null, response, null, start);
+			return response;
+		} catch (RuntimeException e) {
+			afterOperation(OperationInterceptor.INDICES_ADMIN, null, null, e, start);
+			throw e;
+		}
+	}
 
-		return (T) response;
+	@Override
+	public <T extends ActionResponse> T executeGet(final ClusterCallback<T> callback) {
+		long start = System.nanoTime();
+		try {
+			T response = callback.execute(this.client.admin().cluster()).actionGet();
+			afterOperation(OperationInterceptor.CLUSTER_ADMIN, null, response, null, start);
+			return response;
+		} catch (RuntimeException e) {
+			afterOperation(OperationInterceptor.CLUSTER_ADMIN, null, null, e, start);
+			throw e;
+		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
-	public <T extends ActionResponse> T executeGet(ClientCallback<T> callback) {
-		ActionFuture<T> action = callback.execute(this.client);
-		ActionResponse response = (ActionResponse) action.actionGet();
+	public <T extends ActionResponse> T executeGet(final ClientCallback<T> callback) {
+		return executeGet(OperationInterceptor.CLIENT, null, callback);
+	}
 
-		return (T) response;
+	/**
+	 * Execute a client callback, reporting it to the
+	 * {@link #addOperationInterceptor(OperationInterceptor) interceptors} under
+	 * the given operation with the given request
+	 */
+	protected <T extends ActionResponse> T executeGet(final String operation, final ActionRequest<?> request,
+			final ClientCallback<T> callback) {
+		long start = System.nanoTime();
+		try {
+			T response = callback.execute(this.client).actionGet();
+			afterOperation(operation, request, response, null, start);
+			return response;
+		} catch (RuntimeException e) {
+			afterOperation(operation, request, null, e, start);
+			throw e;
+		}
+	}
+
+	@Override
+	public <T extends ActionResponse> ListenableResponseFuture<T> executeAsync(final AsyncClientCallback<T> callback) {
+		return executeAsync(OperationInterceptor.ASYNC_CLIENT, null, callback);
+	}
+
+	/**
+	 * Execute an asynchronous client callback, reporting it to the
+	 * {@link #addOperationInterceptor(OperationInterceptor) interceptors} under
+	 * the given operation with the given request once it completes
+	 */
+	protected <T extends ActionResponse> ListenableResponseFuture<T> executeAsync(final String operation,
+			final ActionRequest<?> request, final AsyncClientCallback<T> callback) {
+		final long start = System.nanoTime();
+		ListenableResponseFuture<T> future = new ListenableResponseFuture<T>();
+		if (!operationInterceptors.isEmpty()) {
+			future.addListener(new ActionListener<T>() {
+				@Override
+				public void onResponse(T response) {
+					afterOperation(operation, request, response, null, start);
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+					afterOperation(operation, request, null, e, start);
+				}
+			});
+		}
+		try {
+			callback.execute(this.client, future);
+		} catch (RuntimeException e) {
+			future.onFailure(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Register an interceptor notified after every operation executed through
+	 * this template, e.g. an {@link OperationMetrics}
+	 * 
+	 * @param interceptor
+	 *          the interceptor
+	 */
+	public void addOperationInterceptor(OperationInterceptor interceptor) {
+		Assert.notNull(interceptor, "interceptor cannot be null");
+		operationInterceptors.add(interceptor);
+	}
+
+	private void afterOperation(String operation, ActionRequest<?> request, ActionResponse response, Throwable failure,
+			long start) {
+		if (operationInterceptors.isEmpty()) {
+			return;
+		}
+		long elapsedNanos = System.nanoTime() - start;
+		for (OperationInterceptor interceptor : operationInterceptors) {
+			try {
+				interceptor.afterOperation(operation, request, response, failure, elapsedNanos);
+			} catch (RuntimeException e) {
+				logger.warn("operation interceptor " + interceptor + " failed", e);
+			}
+		}
+	}
+
+	@Override
+	public void addIndexChangeListener(IndexChangeListener listener) {
+		Assert.notNull(listener, "listener cannot be null");
+		indexChangeListeners.add(listener);
+	}
+
+	@Override
+	public void removeIndexChangeListener(IndexChangeListener listener) {
+		indexChangeListeners.remove(listener);
+	}
+
+	@Override
+	public void notifyIndexChanged(String indexName) {
+		for (IndexChangeListener listener : indexChangeListeners) {
+			listener.indexChanged(indexName);
+		}
 	}
 
 	@Override
 	public String getIndexName() {
 		return this.indexName;
 	}
+
+	protected Client getClient() {
+		return this.client;
+	}
 	
 }
@@ -3,7 +3,9 @@ package org.projectx.elasticsearch;
 import java.util.List;
 import java.util.Map;
 
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.ImmutableSettings.Builder;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
 
@@ -32,6 +34,10 @@ import org.springframework.core.io.Resource;
  * {@link #setSettings(Map)} property setter which allows for local settings to
  * be configured via Spring.
  * <p>
+ * A {@link Preset} tunes the node for being embedded in a read-heavy
+ * application; it is applied first, so configuration files and settings can
+ * still override any of its values.
+ * <p>
  * The lifecycle of the underlying {@link Node} instance is tied to the
  * lifecycle of the bean via the {@link #destroy()} method which calls
  * {@link Node#close()}
@@ -50,6 +56,60 @@ public class ElasticsearchNodeFactoryBean implements FactoryBean<Node>, Initiali
 
 	private Node node;
 
+	private Preset preset = Preset.NONE;
+
+	/**
+	 * Settings presets for a node embedded in the application
+	 */
+	public enum Preset {
+
+		/**
+		 * No preset, the node is configured by the configuration files and settings
+		 * only
+		 */
+		NONE,
+
+		/**
+		 * A client node joining the cluster without holding data or being master
+		 * eligible. Requests skip the extra hop of a transport client since the node
+		 * knows the cluster state and sends each request straight to the shards.
+		 */
+		CLIENT,
+
+		/**
+		 * A data node serving reads of its local shards from within the
+		 * application, with search and get thread pools sized for read-heavy load,
+		 * a larger filter cache and a smaller indexing buffer
+		 */
+		DATA;
+
+		Settings settings() {
+			final int processors = Runtime.getRuntime().availableProcessors();
+			final ImmutableSettings.Builder builder = ImmutableSettings.settingsBuilder().put("http.enabled", false);
+			switch (this) {
+			case CLIENT:
+				builder.put("node.client", true);
+				break;
+			case DATA:
+				builder.put("node.data", true)
+						.put("threadpool.search.type", "fixed")
+						.put("threadpool.search.size", processors * 3)
+						.put("threadpool.search.queue_size", 1000)
+						.put("threadpool.get.type", "fixed")
+						.put("threadpool.get.size", processors * 2)
+						.put("threadpool.get.queue_size", 1000)
+						.put("indices.cache.filter.size", "20%")
+						.put("indices.fielddata.cache.size", "30%")
+						.put("indices.fielddata.breaker.limit", "50%")
+						.put("indices.memory.index_buffer_size", "5%");
+				break;
+			default:
+				return ImmutableSettings.EMPTY;
+			}
+			return builder.build();
+		}
+	}
+
 	public void setConfigLocation(final Resource configLocation) {
 		this.configLocation = configLocation;
 	}
@@ -62,6 +122,14 @@ public class ElasticsearchNodeFactoryBean implements FactoryBean<Node>, Initiali
 		this.settings = settings;
 	}
 
+	/**
+	 * Set the preset applied before the configuration files and settings
+	 * (default {@link Preset#NONE})
+	 */
+	public void setPreset(final Preset preset) {
+		this.preset = preset;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		internalCreateNode();
@@ -69,6 +137,7 @@ public class ElasticsearchNodeFactoryBean implements FactoryBean<Node>, Initiali
 
 	private void internalCreateNode() {
 		final NodeBuilder nodeBuilder = NodeBuilder.nodeBuilder();
+		nodeBuilder.getSettings().put(preset.settings());
 
 		if (null != configLocation) {
 			internalLoadSettings(nodeBuilder, configLocation);
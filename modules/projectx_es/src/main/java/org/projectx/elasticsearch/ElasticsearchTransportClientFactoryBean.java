@@ -1,13 +1,21 @@
 package org.projectx.elasticsearch;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.transport.TransportAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
@@ -19,6 +27,24 @@ import org.springframework.core.io.Resource;
  * A {@link FactoryBean} implementation used to create a {@link Client}
  * element which connects remotely to a cluster.
  * <p>
+ * The most relevant transport client settings are exposed as properties and
+ * override the configuration files and the {@link #setSettings(Map)} map when
+ * set:
+ * <ul>
+ * <li>{@link #setSniff(boolean) sniff} adds the other data nodes of the
+ * cluster to the listed addresses</li>
+ * <li>{@link #setPingTimeout(String) pingTimeout} and
+ * {@link #setNodesSamplerInterval(String) nodesSamplerInterval} control how
+ * fast the client notices a node is gone and stops sending it requests</li>
+ * <li>the <code>connectionsPerNode*</code> properties size the connection
+ * pool opened to each node, per channel type</li>
+ * </ul>
+ * Dead nodes are dropped from the connected nodes by the client's own node
+ * sampler, every <code>nodesSamplerInterval</code>; set
+ * {@link #setHealthCheckInterval(long) healthCheckInterval} to additionally
+ * log every node which is listed but no longer connected (and when it comes
+ * back), and every time no node at all is connected.
+ * <p>
  * The lifecycle of the underlying {@link Client} instance is tied to
  * the lifecycle of the bean via the {@link #destroy()} method which calls
  * {@link Client#close()}
@@ -39,6 +65,32 @@ public class ElasticsearchTransportClientFactoryBean implements FactoryBean<Clie
 
 	private Map<String, Integer> transportAddresses;
 
+	private String clusterName;
+
+	private Boolean sniff;
+
+	private Boolean ignoreClusterName;
+
+	private String pingTimeout;
+
+	private String nodesSamplerInterval;
+
+	private Integer connectionsPerNodeRecovery;
+
+	private Integer connectionsPerNodeBulk;
+
+	private Integer connectionsPerNodeReg;
+
+	private Integer connectionsPerNodeState;
+
+	private Integer connectionsPerNodePing;
+
+	private long healthCheckInterval = 0;
+
+	private ScheduledExecutorService healthChecker;
+
+	private final Set<TransportAddress> unavailableAddresses = new HashSet<TransportAddress>();
+
 	public void setConfigLocation(Resource configLocation) {
 		this.configLocation = configLocation;
 	}
@@ -55,9 +107,151 @@ public class ElasticsearchTransportClientFactoryBean implements FactoryBean<Clie
 		this.transportAddresses = transportAddresses;
 	}
 
+	public void setClusterName(final String clusterName) {
+		this.clusterName = clusterName;
+	}
+
+	/**
+	 * Discover and connect to the other data nodes of the cluster
+	 * (<code>client.transport.sniff</code>)
+	 */
+	public void setSniff(final boolean sniff) {
+		this.sniff = sniff;
+	}
+
+	/**
+	 * Accept nodes of any cluster (<code>client.transport.ignore_cluster_name</code>)
+	 */
+	public void setIgnoreClusterName(final boolean ignoreClusterName) {
+		this.ignoreClusterName = ignoreClusterName;
+	}
+
+	/**
+	 * Time to wait for a node to answer a ping, e.g. <code>2s</code>
+	 * (<code>client.transport.ping_timeout</code>, 5s by default)
+	 */
+	public void setPingTimeout(final String pingTimeout) {
+		this.pingTimeout = pingTimeout;
+	}
+
+	/**
+	 * Interval at which the listed nodes are sampled and dead nodes dropped, e.g.
+	 * <code>2s</code> (<code>client.transport.nodes_sampler_interval</code>, 5s by
+	 * default)
+	 */
+	public void setNodesSamplerInterval(final String nodesSamplerInterval) {
+		this.nodesSamplerInterval = nodesSamplerInterval;
+	}
+
+	/**
+	 * Connections per node used for recoveries
+	 * (<code>transport.connections_per_node.recovery</code>)
+	 */
+	public void setConnectionsPerNodeRecovery(final int connectionsPerNodeRecovery) {
+		this.connectionsPerNodeRecovery = connectionsPerNodeRecovery;
+	}
+
+	/**
+	 * Connections per node used for bulk requests
+	 * (<code>transport.connections_per_node.bulk</code>)
+	 */
+	public void setConnectionsPerNodeBulk(final int connectionsPerNodeBulk) {
+		this.connectionsPerNodeBulk = connectionsPerNodeBulk;
+	}
+
+	/**
+	 * Connections per node used for regular requests such as searches
+	 * (<code>transport.connections_per_node.reg</code>)
+	 */
+	public void setConnectionsPerNodeReg(final int connectionsPerNodeReg) {
+		this.connectionsPerNodeReg = connectionsPerNodeReg;
+	}
+
+	/**
+	 * Connections per node used for cluster state requests
+	 * (<code>transport.connections_per_node.state</code>)
+	 */
+	public void setConnectionsPerNodeState(final int connectionsPerNodeState) {
+		this.connectionsPerNodeState = connectionsPerNodeState;
+	}
+
+	/**
+	 * Connections per node used for pings
+	 * (<code>transport.connections_per_node.ping</code>)
+	 */
+	public void setConnectionsPerNodePing(final int connectionsPerNodePing) {
+		this.connectionsPerNodePing = connectionsPerNodePing;
+	}
+
+	/**
+	 * Interval in milliseconds at which the connected nodes are checked and
+	 * changes logged, 0 (the default) to disable the check
+	 */
+	public void setHealthCheckInterval(final long healthCheckInterval) {
+		this.healthCheckInterval = healthCheckInterval;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		internalCreateTransportClient();
+
+		if (healthCheckInterval > 0) {
+			healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "transport-client-health-check");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			healthChecker.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					checkHealth();
+				}
+			}, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Compare the connected nodes with the listed addresses and log the changes
+	 * since the last check. With sniffing on, the connected nodes are the
+	 * sniffed nodes reported under their publish addresses, which need not
+	 * match the listed ones, so only the number of connected nodes is checked.
+	 * 
+	 * @return the number of connected nodes
+	 */
+	public int checkHealth() {
+		try {
+			final TransportClient transportClient = (TransportClient) client;
+			final Set<TransportAddress> connected = new HashSet<TransportAddress>();
+			for (final DiscoveryNode node : transportClient.connectedNodes()) {
+				connected.add(node.address());
+			}
+
+			if (!transportClient.settings().getAsBoolean("client.transport.sniff", false)) {
+				synchronized (unavailableAddresses) {
+					for (final TransportAddress address : transportClient.transportAddresses()) {
+						if (connected.contains(address)) {
+							if (unavailableAddresses.remove(address)) {
+								logger.info("Transport address " + address + " is connected again");
+							}
+						} else if (unavailableAddresses.add(address)) {
+							logger.warn("Transport address " + address
+									+ " is not connected, requests are routed to the other nodes");
+						}
+					}
+				}
+			}
+
+			if (connected.isEmpty()) {
+				logger.error("No Elasticsearch node is connected");
+			}
+			return connected.size();
+		} catch (final RuntimeException e) {
+			logger.warn("Health check failed", e);
+			return 0;
+		}
 	}
 
 	private void internalCreateTransportClient() {
@@ -76,6 +270,17 @@ public class ElasticsearchTransportClientFactoryBean implements FactoryBean<Clie
 			builder.put(this.settings);
 		}
 
+		putIfSet(builder, "cluster.name", clusterName);
+		putIfSet(builder, "client.transport.sniff", sniff);
+		putIfSet(builder, "client.transport.ignore_cluster_name", ignoreClusterName);
+		putIfSet(builder, "client.transport.ping_timeout", pingTimeout);
+		putIfSet(builder, "client.transport.nodes_sampler_interval", nodesSamplerInterval);
+		putIfSet(builder, "transport.connections_per_node.recovery", connectionsPerNodeRecovery);
+		putIfSet(builder, "transport.connections_per_node.bulk", connectionsPerNodeBulk);
+		putIfSet(builder, "transport.connections_per_node.reg", connectionsPerNodeReg);
+		putIfSet(builder, "transport.connections_per_node.state", connectionsPerNodeState);
+		putIfSet(builder, "transport.connections_per_node.ping", connectionsPerNodePing);
+
 		client = new TransportClient(builder.build());
 
 		if (transportAddresses != null) {
@@ -88,6 +293,12 @@ public class ElasticsearchTransportClientFactoryBean implements FactoryBean<Clie
 		}
 	}
 	
+	private static void putIfSet(ImmutableSettings.Builder builder, String key, Object value) {
+		if (value != null) {
+			builder.put(key, String.valueOf(value));
+		}
+	}
+	
 	private void internalLoadSettings(ImmutableSettings.Builder builder, Resource configLocation) {
 		try {
 			String filename = configLocation.getFilename();
@@ -101,6 +312,9 @@ public class ElasticsearchTransportClientFactoryBean implements FactoryBean<Clie
 
 	@Override
 	public void destroy() throws Exception {
+		if (healthChecker != null) {
+			healthChecker.shutdownNow();
+		}
 		client.close();
 	}
 
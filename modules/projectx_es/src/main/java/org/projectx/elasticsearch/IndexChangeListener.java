@@ -0,0 +1,17 @@
+package org.projectx.elasticsearch;
+
+/**
+ * A listener notified when documents of an index may have changed as seen by
+ * searches, e.g. after a refresh or a bulk write through a template
+ */
+public interface IndexChangeListener {
+
+	/**
+	 * Called after the content of the index may have changed
+	 * 
+	 * @param indexName
+	 *          the name of the changed index
+	 */
+	void indexChanged(final String indexName);
+
+}
@@ -0,0 +1,100 @@
+package org.projectx.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link org.elasticsearch.action.ActionFuture} which is completed by the
+ * Elasticsearch {@link ActionListener} callbacks and to which further
+ * listeners can be attached, so callers can chain work on a response instead
+ * of parking a thread in <code>actionGet()</code>.
+ * <p>
+ * Listeners added before completion are invoked on the thread completing the
+ * future (usually an Elasticsearch transport or search thread, so they should
+ * not block) before the future itself completes; listeners added after
+ * completion are invoked immediately on the calling thread.
+ * 
+ * @param <T>
+ *          the response type
+ */
+public class ListenableResponseFuture<T> extends PlainActionFuture<T> {
+
+	private static Logger logger = LoggerFactory.getLogger(ListenableResponseFuture.class);
+
+	private final List<ActionListener<T>> listeners = new ArrayList<ActionListener<T>>();
+
+	private boolean completed = false;
+
+	private T response;
+
+	private Throwable failure;
+
+	/**
+	 * Notifies the attached listeners before completing the future, so a
+	 * caller returning from <code>actionGet()</code> observes their effects
+	 * (e.g. recorded operation metrics)
+	 */
+	@Override
+	public void onResponse(final T result) {
+		complete(result, null);
+		super.onResponse(result);
+	}
+
+	@Override
+	public void onFailure(final Throwable e) {
+		complete(null, e);
+		super.onFailure(e);
+	}
+
+	/**
+	 * Attach a listener which is notified once the response (or failure) is
+	 * available
+	 * 
+	 * @param listener
+	 *          the listener to notify
+	 */
+	public void addListener(final ActionListener<T> listener) {
+		synchronized (listeners) {
+			if (!completed) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener, response, failure);
+	}
+
+	private void complete(final T result, final Throwable e) {
+		final List<ActionListener<T>> toNotify;
+		synchronized (listeners) {
+			if (completed) {
+				return;
+			}
+			completed = true;
+			response = result;
+			failure = e;
+			toNotify = new ArrayList<ActionListener<T>>(listeners);
+			listeners.clear();
+		}
+		for (final ActionListener<T> listener : toNotify) {
+			notifyListener(listener, result, e);
+		}
+	}
+
+	private void notifyListener(final ActionListener<T> listener, final T result, final Throwable e) {
+		try {
+			if (e == null) {
+				listener.onResponse(result);
+			} else {
+				listener.onFailure(e);
+			}
+		} catch (final RuntimeException re) {
+			logger.warn("Listener threw an exception", re);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.projectx.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.projectx.index.SearchOptions;
+import org.springframework.util.Assert;
+
+/**
+ * Collects several independent searches and sends them to Elasticsearch as a
+ * single multi search request. Each search gets its own future, completed with
+ * its own response or failure once the multi search returns, so the searches
+ * of a page can be issued in one round trip:
+ * 
+ * <pre>
+ * MultiSearch multiSearch = new MultiSearch(template);
+ * ListenableResponseFuture&lt;SearchResponse&gt; results = multiSearch.add(&quot;title:foo&quot;, new SearchOptions());
+ * ListenableResponseFuture&lt;SearchResponse&gt; facets = multiSearch.add(facetQuery, new SearchOptions().size(0));
+ * multiSearch.execute();
+ * </pre>
+ * 
+ * Instances are not thread safe and can be executed once, see
+ * {@link MultiSearchBatcher} for sharing round trips between threads.
+ */
+public class MultiSearch {
+
+	private final ClientTemplate template;
+
+	private final MultiSearchRequest request = new MultiSearchRequest();
+
+	private final List<ListenableResponseFuture<SearchResponse>> futures = new ArrayList<ListenableResponseFuture<SearchResponse>>();
+
+	private boolean executed = false;
+
+	public MultiSearch(final ClientTemplate template) {
+		Assert.notNull(template, "template cannot be null");
+
+		this.template = template;
+	}
+
+	/**
+	 * Add a query string search
+	 * 
+	 * @return a future completed with the response of this search
+	 */
+	public ListenableResponseFuture<SearchResponse> add(final String queryString, final SearchOptions options) {
+		return add(QueryBuilders.queryString(queryString), options);
+	}
+
+	/**
+	 * Add a search, built with the same defaults as
+	 * {@link ClientTemplate#search(QueryBuilder, SearchOptions)}
+	 * 
+	 * @return a future completed with the response of this search
+	 */
+	public ListenableResponseFuture<SearchResponse> add(final QueryBuilder query, final SearchOptions options) {
+		Assert.state(!executed, "multi search was already executed");
+
+		request.add(template.searchRequest(query, options));
+		final ListenableResponseFuture<SearchResponse> future = new ListenableResponseFuture<SearchResponse>();
+		futures.add(future);
+		return future;
+	}
+
+	/**
+	 * @return the number of searches added so far
+	 */
+	public int size() {
+		return futures.size();
+	}
+
+	/**
+	 * Send all searches in one request without blocking, the responses are
+	 * delivered through the futures returned by the <code>add</code> methods
+	 */
+	public void execute() {
+		Assert.state(!executed, "multi search was already executed");
+		executed = true;
+		if (futures.isEmpty()) {
+			return;
+		}
+
+		template.executeAsync(new AsyncClientCallback<MultiSearchResponse>() {
+			@Override
+			public void execute(final Client client, final ActionListener<MultiSearchResponse> listener) {
+				client.multiSearch(request, listener);
+			}
+		}).addListener(new ActionListener<MultiSearchResponse>() {
+			@Override
+			public void onResponse(final MultiSearchResponse response) {
+				final MultiSearchResponse.Item[] items = response.getResponses();
+				for (int i = 0; i < futures.size(); i++) {
+					final MultiSearchResponse.Item item = items[i];
+					if (item.isFailure()) {
+						futures.get(i).onFailure(new ElasticsearchException(item.getFailureMessage()));
+					} else {
+						futures.get(i).onResponse(item.getResponse());
+					}
+				}
+			}
+
+			@Override
+			public void onFailure(final Throwable e) {
+				for (final ListenableResponseFuture<SearchResponse> future : futures) {
+					future.onFailure(e);
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,127 @@
+package org.projectx.elasticsearch;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.projectx.index.SearchOptions;
+import org.springframework.util.Assert;
+
+/**
+ * Micro-batches searches submitted concurrently by different threads into
+ * shared {@link MultiSearch} round trips. The first search of a batch opens a
+ * window of <code>windowMillis</code>; every search submitted during the window
+ * joins the batch, which is sent when the window closes or once it holds
+ * <code>maxBatchSize</code> searches, whichever happens first.
+ * <p>
+ * The window adds up to <code>windowMillis</code> latency to a lone search in
+ * exchange for fewer requests under load, so it should be kept to a few
+ * milliseconds.
+ */
+public class MultiSearchBatcher implements Closeable {
+
+	private final ClientTemplate template;
+
+	private final long windowMillis;
+
+	private final int maxBatchSize;
+
+	private final ScheduledExecutorService scheduler;
+
+	private MultiSearch batch;
+
+	private boolean closed = false;
+
+	public MultiSearchBatcher(final ClientTemplate template, final long windowMillis, final int maxBatchSize) {
+		Assert.notNull(template, "template cannot be null");
+		Assert.isTrue(windowMillis > 0, "windowMillis must be positive");
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+
+		this.template = template;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "multi-search-batcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submit a query string search to the current batch
+	 * 
+	 * @return a future completed with the response of this search
+	 */
+	public ListenableResponseFuture<SearchResponse> submit(final String queryString, final SearchOptions options) {
+		return submit(QueryBuilders.queryString(queryString), options);
+	}
+
+	/**
+	 * Submit a search to the current batch
+	 * 
+	 * @return a future completed with the response of this search
+	 */
+	public ListenableResponseFuture<SearchResponse> submit(final QueryBuilder query, final SearchOptions options) {
+		final MultiSearch full;
+		final ListenableResponseFuture<SearchResponse> future;
+		synchronized (this) {
+			Assert.state(!closed, "batcher is closed");
+
+			if (batch == null) {
+				final MultiSearch opened = new MultiSearch(template);
+				batch = opened;
+				scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush(opened);
+					}
+				}, windowMillis, TimeUnit.MILLISECONDS);
+			}
+			future = batch.add(query, options);
+			if (batch.size() < maxBatchSize) {
+				return future;
+			}
+			full = batch;
+			batch = null;
+		}
+		full.execute();
+		return future;
+	}
+
+	/**
+	 * Send the pending batch, if any, and stop accepting searches
+	 */
+	@Override
+	public void close() {
+		final MultiSearch pending;
+		synchronized (this) {
+			closed = true;
+			pending = batch;
+			batch = null;
+		}
+		if (pending != null) {
+			pending.execute();
+		}
+		scheduler.shutdown();
+	}
+
+	private void flush(final MultiSearch expected) {
+		synchronized (this) {
+			// the batch may have been sent already because it filled up
+			if (batch != expected) {
+				return;
+			}
+			batch = null;
+		}
+		expected.execute();
+	}
+
+}
@@ -56,6 +56,16 @@ public interface NodeOperations {
 	@Deprecated
 	void snapshotIndex(final String indexName);
 
+	/**
+	 * Start a bulk load of the underlying index, disabling refreshes and
+	 * replicas until the session is finished
+	 * 
+	 * @return the started {@link BulkLoadSession}
+	 */
+	BulkLoadSession beginBulkLoad();
+
+	BulkLoadSession beginBulkLoad(final String indexName);
+
 	/**
 	 * Execute a get using the {@link NodeCallback} on the node
 	 * 
@@ -89,6 +99,45 @@ public interface NodeOperations {
 	 */
 	<T extends ActionResponse> T executeGet(final ClientCallback<T> callback);
 
+	/**
+	 * Execute an operation using the {@link AsyncClientCallback} on the client
+	 * without blocking the calling thread
+	 * 
+	 * @param <T>
+	 *            the actual {@link ActionResponse} sub-class
+	 * @param callback
+	 *            the execution specification
+	 * @return a future completed with the response of the client operation
+	 */
+	<T extends ActionResponse> ListenableResponseFuture<T> executeAsync(final AsyncClientCallback<T> callback);
+
+	/**
+	 * Register a listener notified whenever an index is changed through these
+	 * operations
+	 * 
+	 * @param listener
+	 *            the listener to register
+	 */
+	void addIndexChangeListener(final IndexChangeListener listener);
+
+	/**
+	 * Unregister a listener registered with
+	 * {@link #addIndexChangeListener(IndexChangeListener)}
+	 * 
+	 * @param listener
+	 *            the listener to unregister
+	 */
+	void removeIndexChangeListener(final IndexChangeListener listener);
+
+	/**
+	 * Notify the registered listeners that an index changed, for writes which
+	 * are executed through a callback rather than a dedicated operation
+	 * 
+	 * @param indexName
+	 *            the name of the changed index
+	 */
+	void notifyIndexChanged(final String indexName);
+
 	/**
 	 * Get the name of the underlying index
 	 * 
@@ -0,0 +1,58 @@
+package org.projectx.elasticsearch;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+
+/**
+ * Notified after every operation executed through a {@link ClientTemplate},
+ * successful or not. Interceptors are invoked on the thread completing the
+ * operation, which for asynchronous operations is an Elasticsearch thread, so
+ * they must be fast and must not block
+ * 
+ * @see OperationMetrics
+ */
+public interface OperationInterceptor {
+
+	/**
+	 * Operations executed through a {@link NodeCallback}
+	 */
+	String INDICES_ADMIN = "indicesAdmin";
+
+	/**
+	 * Operations executed through a {@link ClusterCallback}
+	 */
+	String CLUSTER_ADMIN = "clusterAdmin";
+
+	/**
+	 * Operations executed through a {@link ClientCallback}
+	 */
+	String CLIENT = "client";
+
+	/**
+	 * Operations executed through an {@link AsyncClientCallback}
+	 */
+	String ASYNC_CLIENT = "asyncClient";
+
+	/**
+	 * Searches issued by the template itself, for which the request is known
+	 */
+	String SEARCH = "search";
+
+	/**
+	 * @param operation
+	 *          the kind of operation, one of the constants of this interface
+	 * @param request
+	 *          the request if known to the template, <code>null</code> for
+	 *          requests built inside a callback
+	 * @param response
+	 *          the response, <code>null</code> if the operation failed
+	 * @param failure
+	 *          the failure, <code>null</code> if the operation succeeded
+	 * @param elapsedNanos
+	 *          the time observed by the client, from the execution of the
+	 *          callback to the response
+	 */
+	void afterOperation(final String operation, final ActionRequest<?> request, final ActionResponse response,
+			final Throwable failure, final long elapsedNanos);
+
+}
@@ -0,0 +1,409 @@
+package org.projectx.elasticsearch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.transport.ReceiveTimeoutTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OperationInterceptor} keeping latency histograms and failure
+ * counters per kind of operation, exported through JMX with
+ * {@link OperationMetricsMXBean} and programmatically with {@link #snapshot()}.
+ * <p>
+ * For search and bulk responses the time reported by Elasticsearch (
+ * <code>took</code>) is recorded next to the time observed by the client, the
+ * difference being the time spent queueing, on the network and in
+ * (de)serialization. Timeouts, rejections (full thread pool queues) and shard
+ * failures are counted apart from plain failures since partial results are
+ * returned as successful responses. Operations slower than
+ * {@link #setSlowThresholdMillis(long) a threshold} are logged with the source
+ * of their request when it is known.
+ */
+public class OperationMetrics implements OperationInterceptor, OperationMetricsMXBean {
+
+	private static Logger logger = LoggerFactory.getLogger(OperationMetrics.class);
+
+	private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	private volatile long slowThresholdMillis = 1000;
+
+	@Override
+	public void afterOperation(final String operation, final ActionRequest<?> request, final ActionResponse response,
+			final Throwable failure, final long elapsedNanos) {
+		final Stats operationStats = stats(operation);
+		final long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+		operationStats.observed.record(elapsedMicros);
+		operationStats.operations.incrementAndGet();
+
+		if (failure != null) {
+			operationStats.failures.incrementAndGet();
+			final Throwable cause = ExceptionsHelper.unwrapCause(failure);
+			if (cause instanceof EsRejectedExecutionException) {
+				operationStats.rejections.incrementAndGet();
+			} else if (cause instanceof ElasticsearchTimeoutException || cause instanceof ReceiveTimeoutTransportException) {
+				operationStats.timeouts.incrementAndGet();
+			}
+		} else if (response instanceof SearchResponse) {
+			final SearchResponse searchResponse = (SearchResponse) response;
+			operationStats.took.record(TimeUnit.MILLISECONDS.toMicros(searchResponse.getTookInMillis()));
+			if (searchResponse.isTimedOut()) {
+				operationStats.timeouts.incrementAndGet();
+			}
+			for (final ShardSearchFailure shardFailure : searchResponse.getShardFailures()) {
+				operationStats.shardFailures.incrementAndGet();
+				if (isRejection(shardFailure)) {
+					operationStats.rejections.incrementAndGet();
+				}
+			}
+		} else if (response instanceof BulkResponse) {
+			final BulkResponse bulkResponse = (BulkResponse) response;
+			operationStats.took.record(TimeUnit.MILLISECONDS.toMicros(bulkResponse.getTookInMillis()));
+			if (bulkResponse.hasFailures()) {
+				for (final BulkItemResponse item : bulkResponse.getItems()) {
+					if (item.isFailed() && isRejection(item.getFailureMessage())) {
+						operationStats.rejections.incrementAndGet();
+					}
+				}
+			}
+		}
+
+		if (slowThresholdMillis >= 0 && elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis)) {
+			operationStats.slow.incrementAndGet();
+			logSlowOperation(operation, request, response, elapsedMicros);
+		}
+	}
+
+	private void logSlowOperation(final String operation, final ActionRequest<?> request, final ActionResponse response,
+			final long elapsedMicros) {
+		if (!logger.isWarnEnabled()) {
+			return;
+		}
+		final StringBuilder message = new StringBuilder("slow ").append(operation).append(" operation took ")
+				.append(TimeUnit.MICROSECONDS.toMillis(elapsedMicros)).append("ms");
+		if (response instanceof SearchResponse) {
+			message.append(" (").append(((SearchResponse) response).getTookInMillis()).append("ms in elasticsearch)");
+		}
+		if (request instanceof SearchRequest) {
+			final SearchRequest searchRequest = (SearchRequest) request;
+			message.append(", indices ").append(Arrays.toString(searchRequest.indices()));
+			if (searchRequest.source() != null) {
+				message.append(", source ").append(sourceAsJson(searchRequest.source()));
+			}
+		} else if (request != null) {
+			message.append(", request ").append(request);
+		}
+		logger.warn(message.toString());
+	}
+
+	/**
+	 * The search source is usually built as SMILE rather than JSON
+	 */
+	private static String sourceAsJson(final BytesReference source) {
+		try {
+			return XContentHelper.convertToJson(source, false);
+		} catch (final IOException e) {
+			return "of " + source.length() + " bytes";
+		}
+	}
+
+	/**
+	 * The cause of a shard failure is only kept on the node which ran the
+	 * shard; a failure read from another node only keeps its status, and
+	 * Elasticsearch 1.x reports a full queue as SERVICE_UNAVAILABLE
+	 */
+	private static boolean isRejection(final ShardSearchFailure shardFailure) {
+		if (shardFailure.failure() != null) {
+			return ExceptionsHelper.unwrapCause(shardFailure.failure()) instanceof EsRejectedExecutionException;
+		}
+		return shardFailure.status() == RestStatus.SERVICE_UNAVAILABLE;
+	}
+
+	/**
+	 * A bulk item failure only carries its message and a status shared with
+	 * other failures, so the rejection is recognized by its exception name
+	 */
+	private static boolean isRejection(final String failureMessage) {
+		return failureMessage != null && failureMessage.contains(EsRejectedExecutionException.class.getSimpleName());
+	}
+
+	private Stats stats(final String operation) {
+		Stats operationStats = stats.get(operation);
+		if (operationStats == null) {
+			final Stats created = new Stats();
+			operationStats = stats.putIfAbsent(operation, created);
+			if (operationStats == null) {
+				operationStats = created;
+			}
+		}
+		return operationStats;
+	}
+
+	/**
+	 * @return a point in time copy of the statistics, per kind of operation
+	 */
+	public Map<String, Snapshot> snapshot() {
+		final Map<String, Snapshot> snapshot = new TreeMap<String, Snapshot>();
+		for (final Map.Entry<String, Stats> entry : stats.entrySet()) {
+			snapshot.put(entry.getKey(), new Snapshot(entry.getKey(), entry.getValue()));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	@Override
+	public long getOperations() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.operations.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getFailures() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.failures.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getTimeouts() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.timeouts.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getRejections() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.rejections.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getShardFailures() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.shardFailures.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getSlowOperations() {
+		long total = 0;
+		for (final Stats operationStats : stats.values()) {
+			total += operationStats.slow.get();
+		}
+		return total;
+	}
+
+	@Override
+	public Map<String, String> getLatencies() {
+		final Map<String, String> latencies = new TreeMap<String, String>();
+		for (final Map.Entry<String, Stats> entry : stats.entrySet()) {
+			latencies.put(entry.getKey(), entry.getValue().observed.toString());
+		}
+		return latencies;
+	}
+
+	@Override
+	public Map<String, String> getTookLatencies() {
+		final Map<String, String> latencies = new TreeMap<String, String>();
+		for (final Map.Entry<String, Stats> entry : stats.entrySet()) {
+			if (entry.getValue().took.getCount() > 0) {
+				latencies.put(entry.getKey(), entry.getValue().took.toString());
+			}
+		}
+		return latencies;
+	}
+
+	@Override
+	public long getSlowThresholdMillis() {
+		return slowThresholdMillis;
+	}
+
+	/**
+	 * Set the client observed latency above which an operation is logged, a
+	 * negative value disables the slow log (default 1000)
+	 * 
+	 * @param slowThresholdMillis
+	 *          the threshold in milliseconds
+	 */
+	@Override
+	public void setSlowThresholdMillis(final long slowThresholdMillis) {
+		this.slowThresholdMillis = slowThresholdMillis;
+	}
+
+	@Override
+	public void reset() {
+		stats.clear();
+	}
+
+	private static class Stats {
+
+		final LatencyHistogram observed = new LatencyHistogram();
+
+		final LatencyHistogram took = new LatencyHistogram();
+
+		final AtomicLong operations = new AtomicLong();
+
+		final AtomicLong failures = new AtomicLong();
+
+		final AtomicLong timeouts = new AtomicLong();
+
+		final AtomicLong rejections = new AtomicLong();
+
+		final AtomicLong shardFailures = new AtomicLong();
+
+		final AtomicLong slow = new AtomicLong();
+
+	}
+
+	/**
+	 * The statistics of one kind of operation at a point in time, latencies are
+	 * in microseconds
+	 */
+	public static class Snapshot {
+
+		private final String operation;
+
+		private final long operations;
+
+		private final long failures;
+
+		private final long timeouts;
+
+		private final long rejections;
+
+		private final long shardFailures;
+
+		private final long slowOperations;
+
+		private final long observedP50;
+
+		private final long observedP99;
+
+		private final long observedMax;
+
+		private final long tookP50;
+
+		private final long tookP99;
+
+		private final long tookMax;
+
+		Snapshot(final String operation, final Stats stats) {
+			this.operation = operation;
+			this.operations = stats.operations.get();
+			this.failures = stats.failures.get();
+			this.timeouts = stats.timeouts.get();
+			this.rejections = stats.rejections.get();
+			this.shardFailures = stats.shardFailures.get();
+			this.slowOperations = stats.slow.get();
+			this.observedP50 = stats.observed.percentile(50);
+			this.observedP99 = stats.observed.percentile(99);
+			this.observedMax = stats.observed.getMax();
+			this.tookP50 = stats.took.percentile(50);
+			this.tookP99 = stats.took.percentile(99);
+			this.tookMax = stats.took.getMax();
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public long getOperations() {
+			return operations;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		public long getRejections() {
+			return rejections;
+		}
+
+		public long getShardFailures() {
+			return shardFailures;
+		}
+
+		public long getSlowOperations() {
+			return slowOperations;
+		}
+
+		public long getObservedP50() {
+			return observedP50;
+		}
+
+		public long getObservedP99() {
+			return observedP99;
+		}
+
+		public long getObservedMax() {
+			return observedMax;
+		}
+
+		public long getTookP50() {
+			return tookP50;
+		}
+
+		public long getTookP99() {
+			return tookP99;
+		}
+
+		public long getTookMax() {
+			return tookMax;
+		}
+
+		/**
+		 * @return the median time spent outside of Elasticsearch (queueing,
+		 *         network and serialization), 0 for operations which don't report
+		 *         their took time
+		 */
+		public long getOverheadP50() {
+			return tookMax == 0 && tookP50 == 0 ? 0 : Math.max(0, observedP50 - tookP50);
+		}
+
+		@Override
+		public String toString() {
+			return operation + ": operations=" + operations + ", failures=" + failures + ", timeouts=" + timeouts
+					+ ", rejections=" + rejections + ", shardFailures=" + shardFailures + ", slow=" + slowOperations
+					+ ", observed p50/p99/max=" + observedP50 + "/" + observedP99 + "/" + observedMax + "us, took p50/p99/max="
+					+ tookP50 + "/" + tookP99 + "/" + tookMax + "us";
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.projectx.elasticsearch;
+
+import java.util.Map;
+
+/**
+ * Management interface exporting the statistics of an {@link OperationMetrics}
+ */
+public interface OperationMetricsMXBean {
+
+	long getOperations();
+
+	long getFailures();
+
+	long getTimeouts();
+
+	long getRejections();
+
+	long getShardFailures();
+
+	long getSlowOperations();
+
+	/**
+	 * @return a summary of the client observed latency per kind of operation
+	 */
+	Map<String, String> getLatencies();
+
+	/**
+	 * @return a summary of the latency reported by Elasticsearch (the
+	 *         <code>took</code> time) per kind of operation
+	 */
+	Map<String, String> getTookLatencies();
+
+	long getSlowThresholdMillis();
+
+	void setSlowThresholdMillis(long slowThresholdMillis);
+
+	/**
+	 * Reset all the statistics
+	 */
+	void reset();
+
+}
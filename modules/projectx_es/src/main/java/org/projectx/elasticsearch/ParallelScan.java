@@ -0,0 +1,371 @@
+package org.projectx.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.projectx.index.HitIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A full scan of an index (or of all indices behind an alias) split into one
+ * {@link Slice} per shard, each slice scanned with its own
+ * {@link ScrollIterator} and handed to a {@link SliceHandler} on its own
+ * worker. Up to {@link #setParallelism(int) parallelism} slices are processed
+ * at once (the number of cores by default), further slices wait for a free
+ * worker.
+ * <p>
+ * Backpressure is bounded per slice: a scroll only fetches its next page while
+ * the handler consumes the current one, so a slow handler holds at most two
+ * pages of its slice in memory and slows down its scroll rather than
+ * buffering. The results of the handlers are returned together with the scan
+ * statistics in a {@link Result}, in slice order, for the caller to merge.
+ * <p>
+ * If any slice fails, the remaining workers are interrupted and the failure is
+ * rethrown.
+ */
+public class ParallelScan {
+
+	private static Logger logger = LoggerFactory.getLogger(ParallelScan.class);
+
+	/**
+	 * Processes the hits of one slice on the slice's worker
+	 * 
+	 * @param <R>
+	 *          the result of processing a slice
+	 */
+	public interface SliceHandler<R> {
+
+		/**
+		 * Process all the hits of a slice
+		 * 
+		 * @param slice
+		 *          the slice being processed
+		 * @param hits
+		 *          the hits of the slice, closed by the scan once the handler
+		 *          returns
+		 * @return the result of the slice, merged by the caller
+		 */
+		R handle(Slice slice, Iterator<SearchHit> hits);
+	}
+
+	private final NodeOperations operations;
+
+	private final String indexName;
+
+	private QueryBuilder query = QueryBuilders.matchAllQuery();
+
+	private String[] fields;
+
+	private int pageSize = 500;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private TimeValue scrollKeepAlive = TimeValue.timeValueMinutes(5);
+
+	/**
+	 * @param operations
+	 *          the template to scan through
+	 * @param indexName
+	 *          the index or alias to scan
+	 */
+	public ParallelScan(final NodeOperations operations, final String indexName) {
+		Assert.notNull(operations, "operations cannot be null");
+		Assert.hasText(indexName, "indexName cannot be empty");
+
+		this.operations = operations;
+		this.indexName = indexName;
+	}
+
+	/**
+	 * Split the scan into one slice per shard of every index behind the index
+	 * name
+	 * 
+	 * @return the slices of the scan
+	 */
+	public List<Slice> slices() {
+		final GetSettingsResponse response = operations.executeGet(new NodeCallback<GetSettingsResponse>() {
+			@Override
+			public ActionFuture<GetSettingsResponse> execute(final IndicesAdminClient admin) {
+				return admin.getSettings(new GetSettingsRequest().indices(indexName));
+			}
+		});
+
+		final List<String> indices = new ArrayList<String>();
+		for (final Iterator<String> it = response.getIndexToSettings().keysIt(); it.hasNext();) {
+			indices.add(it.next());
+		}
+		Collections.sort(indices);
+
+		final List<Slice> slices = new ArrayList<Slice>();
+		for (final String index : indices) {
+			final String shards = response.getSetting(index, "index.number_of_shards");
+			final int numberOfShards = shards == null ? 1 : Integer.parseInt(shards);
+			for (int shard = 0; shard < numberOfShards; shard++) {
+				slices.add(new Slice(slices.size(), index, shard));
+			}
+		}
+		return slices;
+	}
+
+	/**
+	 * Scan all slices
+	 * 
+	 * @param handler
+	 *          the handler processing each slice
+	 * @return the results of all slices and the statistics of the scan
+	 */
+	public <R> Result<R> execute(final SliceHandler<R> handler) {
+		final long start = System.currentTimeMillis();
+		final List<Slice> slices = slices();
+		if (slices.isEmpty()) {
+			return new Result<R>(Collections.<R> emptyList(), new long[0], 1, 0);
+		}
+
+		final int workers = Math.max(1, Math.min(parallelism, slices.size()));
+		final AtomicInteger sequence = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "scan-" + indexName + "-" + sequence.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		final long[] hitsPerSlice = new long[slices.size()];
+		try {
+			final List<Future<R>> futures = new ArrayList<Future<R>>(slices.size());
+			for (final Slice slice : slices) {
+				futures.add(executor.submit(new Callable<R>() {
+					@Override
+					public R call() {
+						final CountingIterator hits = new CountingIterator(new ScrollIterator(operations,
+								sliceRequest(slice), scrollKeepAlive));
+						try {
+							return handler.handle(slice, hits);
+						} finally {
+							hits.close();
+							hitsPerSlice[slice.getId()] = hits.count;
+						}
+					}
+				}));
+			}
+
+			final List<R> results = new ArrayList<R>(slices.size());
+			for (final Future<R> future : futures) {
+				results.add(future.get());
+			}
+
+			final Result<R> result = new Result<R>(results, hitsPerSlice, workers, System.currentTimeMillis() - start);
+			logger.info("Scanned [" + indexName + "]: " + result);
+			return result;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElasticsearchException("Interrupted while scanning [" + indexName + "]", e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ElasticsearchException("Failed to scan [" + indexName + "]", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private SearchRequest sliceRequest(final Slice slice) {
+		final SearchSourceBuilder source = new SearchSourceBuilder().query(query).size(pageSize);
+		if (fields != null) {
+			source.fields(fields);
+		}
+		return Requests.searchRequest(slice.getIndex()).searchType(SearchType.SCAN)
+				.preference("_shards:" + slice.getShard()).source(source);
+	}
+
+	/**
+	 * The query selecting the documents to scan (all documents by default)
+	 */
+	public void setQuery(final QueryBuilder query) {
+		Assert.notNull(query, "query cannot be null");
+		this.query = query;
+	}
+
+	/**
+	 * The fields to load for each hit, e.g. <code>_source</code> and
+	 * <code>_routing</code> (the source only by default)
+	 */
+	public void setFields(final String... fields) {
+		this.fields = fields;
+	}
+
+	/**
+	 * Number of hits fetched per slice and round trip (default 500)
+	 */
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Maximum number of slices processed at once (default the number of cores)
+	 */
+	public void setParallelism(final int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	public void setScrollKeepAliveMillis(final long scrollKeepAliveMillis) {
+		this.scrollKeepAlive = TimeValue.timeValueMillis(scrollKeepAliveMillis);
+	}
+
+	/**
+	 * A part of a scan, a single shard of a single index
+	 */
+	public static class Slice {
+
+		private final int id;
+
+		private final String index;
+
+		private final int shard;
+
+		Slice(final int id, final String index, final int shard) {
+			this.id = id;
+			this.index = index;
+			this.shard = shard;
+		}
+
+		/**
+		 * @return the position of the slice in the scan, from 0
+		 */
+		public int getId() {
+			return id;
+		}
+
+		public String getIndex() {
+			return index;
+		}
+
+		public int getShard() {
+			return shard;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + index + "][" + shard + "]";
+		}
+	}
+
+	/**
+	 * The results and statistics of a scan
+	 */
+	public static class Result<R> {
+
+		private final List<R> results;
+
+		private final long[] hitsPerSlice;
+
+		private final int workers;
+
+		private final long elapsedMillis;
+
+		Result(final List<R> results, final long[] hitsPerSlice, final int workers, final long elapsedMillis) {
+			this.results = results;
+			this.hitsPerSlice = hitsPerSlice;
+			this.workers = workers;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/**
+		 * @return the result of each slice handler, in slice order
+		 */
+		public List<R> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return the number of hits the handler consumed from each slice
+		 */
+		public long[] getHitsPerSlice() {
+			return hitsPerSlice.clone();
+		}
+
+		public long getTotalHits() {
+			long total = 0;
+			for (final long hits : hitsPerSlice) {
+				total += hits;
+			}
+			return total;
+		}
+
+		public int getWorkers() {
+			return workers;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "slices=" + hitsPerSlice.length + ", workers=" + workers + ", hits=" + getTotalHits() + ", took="
+					+ elapsedMillis + "ms";
+		}
+	}
+
+	private static class CountingIterator implements HitIterator<SearchHit> {
+
+		private final HitIterator<SearchHit> delegate;
+
+		long count = 0;
+
+		CountingIterator(final HitIterator<SearchHit> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return delegate.hasNext();
+		}
+
+		@Override
+		public SearchHit next() {
+			final SearchHit hit = delegate.next();
+			count++;
+			return hit;
+		}
+
+		@Override
+		public void remove() {
+			delegate.remove();
+		}
+
+		@Override
+		public void close() {
+			delegate.close();
+		}
+	}
+
+}
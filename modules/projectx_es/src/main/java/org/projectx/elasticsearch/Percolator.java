@@ -0,0 +1,234 @@
+package org.projectx.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchGenerationException;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.percolate.MultiPercolateRequest;
+import org.elasticsearch.action.percolate.MultiPercolateResponse;
+import org.elasticsearch.action.percolate.PercolateResponse;
+import org.elasticsearch.action.percolate.PercolateSourceBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.springframework.util.Assert;
+
+/**
+ * Matches documents against queries registered once, instead of running every
+ * saved search periodically.
+ * <p>
+ * Queries are stored in the <code>.percolator</code> type of the template's
+ * index and are available as soon as they are registered. Documents are
+ * percolated in batches of {@link #setBatchSize(int) batchSize}, each batch
+ * sent as a single multi percolate request with at most
+ * {@link #setConcurrentRequests(int) concurrentRequests} batches in flight, so
+ * matching N documents against all the registered queries costs one round
+ * trip per batch without flooding the percolate thread pools. The index must
+ * hold the mapping of the percolated document type so the documents are
+ * analyzed like indexed ones.
+ */
+public class Percolator {
+
+	/**
+	 * The type holding the registered queries
+	 */
+	public static final String PERCOLATOR_TYPE = ".percolator";
+
+	private final ClientTemplate template;
+
+	private final String indexName;
+
+	private final String documentType;
+
+	private int batchSize = 100;
+
+	private int concurrentRequests = 4;
+
+	public Percolator(final ClientTemplate template, final String documentType) {
+		Assert.notNull(template, "template cannot be null");
+		Assert.hasText(template.getIndexName(), "percolation requires a template with an index");
+		Assert.hasText(documentType, "documentType cannot be empty");
+
+		this.template = template;
+		this.indexName = template.getIndexName();
+		this.documentType = documentType;
+	}
+
+	/**
+	 * Register (or replace) a query string query
+	 * 
+	 * @see #register(String, QueryBuilder)
+	 */
+	public void register(final String id, final String queryString) {
+		register(id, QueryBuilders.queryString(queryString));
+	}
+
+	/**
+	 * Register (or replace) a query
+	 * 
+	 * @param id
+	 *          the id of the query, reported by the percolation of the documents
+	 *          matching it
+	 * @param query
+	 *          the query
+	 */
+	public void register(final String id, final QueryBuilder query) {
+		final IndexRequest request;
+		try {
+			final XContentBuilder source = XContentFactory.jsonBuilder().startObject().field("query");
+			query.toXContent(source, ToXContent.EMPTY_PARAMS);
+			request = Requests.indexRequest(indexName).type(PERCOLATOR_TYPE).id(id).source(source.endObject());
+		} catch (final IOException e) {
+			throw new ElasticsearchGenerationException("Failed to build percolator query [" + id + "]", e);
+		}
+
+		template.executeGet(new ClientCallback<IndexResponse>() {
+			@Override
+			public ActionFuture<IndexResponse> execute(final Client client) {
+				return client.index(request);
+			}
+		});
+	}
+
+	/**
+	 * Remove a registered query
+	 * 
+	 * @param id
+	 *          the id of the query
+	 * @return true if the query was registered
+	 */
+	public boolean unregister(final String id) {
+		return template.executeGet(new ClientCallback<DeleteResponse>() {
+			@Override
+			public ActionFuture<DeleteResponse> execute(final Client client) {
+				return client.delete(Requests.deleteRequest(indexName).type(PERCOLATOR_TYPE).id(id));
+			}
+		}).isFound();
+	}
+
+	/**
+	 * Match a single document against the registered queries
+	 * 
+	 * @param document
+	 *          the document source
+	 * @return the ids of the matching queries
+	 */
+	public List<String> percolate(final XContentBuilder document) {
+		return percolate(Collections.singletonList(document)).get(0);
+	}
+
+	/**
+	 * Match documents against the registered queries, in batches
+	 * 
+	 * @param documents
+	 *          the document sources
+	 * @return the ids of the matching queries of each document, in the order of
+	 *         the documents
+	 * @throws ElasticsearchException
+	 *           if the percolation of any document failed
+	 */
+	public List<List<String>> percolate(final List<XContentBuilder> documents) {
+		final Semaphore inFlight = new Semaphore(concurrentRequests);
+		final ActionListener<MultiPercolateResponse> release = new ActionListener<MultiPercolateResponse>() {
+			@Override
+			public void onResponse(final MultiPercolateResponse response) {
+				inFlight.release();
+			}
+
+			@Override
+			public void onFailure(final Throwable e) {
+				inFlight.release();
+			}
+		};
+
+		final List<ListenableResponseFuture<MultiPercolateResponse>> batches = new ArrayList<ListenableResponseFuture<MultiPercolateResponse>>();
+		for (int from = 0; from < documents.size(); from += batchSize) {
+			try {
+				inFlight.acquire();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ElasticsearchException("Interrupted while percolating", e);
+			}
+			final ListenableResponseFuture<MultiPercolateResponse> batch = percolateAsync(documents.subList(from,
+					Math.min(documents.size(), from + batchSize)));
+			batch.addListener(release);
+			batches.add(batch);
+		}
+
+		final List<List<String>> matches = new ArrayList<List<String>>(documents.size());
+		for (final ListenableResponseFuture<MultiPercolateResponse> batch : batches) {
+			for (final MultiPercolateResponse.Item item : batch.actionGet()) {
+				if (item.isFailure()) {
+					throw new ElasticsearchException("Percolation failed: " + item.getErrorMessage());
+				}
+				matches.add(matchedIds(item.getResponse()));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Send a single multi percolate request for the documents without blocking
+	 * 
+	 * @param documents
+	 *          the document sources
+	 * @return a future completed with one response item per document
+	 */
+	public ListenableResponseFuture<MultiPercolateResponse> percolateAsync(final List<XContentBuilder> documents) {
+		return template.executeAsync(new AsyncClientCallback<MultiPercolateResponse>() {
+			@Override
+			public void execute(final Client client, final ActionListener<MultiPercolateResponse> listener) {
+				final MultiPercolateRequest request = new MultiPercolateRequest();
+				for (final XContentBuilder document : documents) {
+					request.add(client.preparePercolate().setIndices(indexName).setDocumentType(documentType)
+							.setPercolateDoc(PercolateSourceBuilder.docBuilder().setDoc(document)));
+				}
+				client.multiPercolate(request, listener);
+			}
+		});
+	}
+
+	private static List<String> matchedIds(final PercolateResponse response) {
+		final PercolateResponse.Match[] matches = response.getMatches();
+		if (matches == null) {
+			return Collections.emptyList();
+		}
+		final List<String> ids = new ArrayList<String>(matches.length);
+		for (final PercolateResponse.Match match : matches) {
+			ids.add(match.getId().string());
+		}
+		return ids;
+	}
+
+	/**
+	 * Set the number of documents sent per multi percolate request (default
+	 * 100)
+	 */
+	public void setBatchSize(final int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the number of multi percolate requests a single
+	 * {@link #percolate(List)} call keeps in flight (default 4)
+	 */
+	public void setConcurrentRequests(final int concurrentRequests) {
+		Assert.isTrue(concurrentRequests > 0, "concurrentRequests must be positive");
+		this.concurrentRequests = concurrentRequests;
+	}
+
+}
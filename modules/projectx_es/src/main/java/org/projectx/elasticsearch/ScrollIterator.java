@@ -0,0 +1,190 @@
+package org.projectx.elasticsearch;
+
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.projectx.index.HitIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link HitIterator} over a scrolled search. While the caller consumes a
+ * page, the next page is already being fetched in the background through
+ * {@link NodeOperations#executeAsync(AsyncClientCallback)}, so at most one
+ * page is held in memory besides the one being consumed.
+ * <p>
+ * Both plain scrolls and {@link org.elasticsearch.action.search.SearchType#SCAN
+ * scans} are supported; note that the page size of a scan applies per shard.
+ * The scroll context is cleared as soon as the last page was read or the
+ * iterator is closed. Instances are meant to be consumed by a single thread.
+ */
+public class ScrollIterator implements HitIterator<SearchHit> {
+
+	private static Logger logger = LoggerFactory.getLogger(ScrollIterator.class);
+
+	private static final SearchHit[] NO_HITS = new SearchHit[0];
+
+	private final NodeOperations operations;
+
+	private final TimeValue keepAlive;
+
+	private ListenableResponseFuture<SearchResponse> next;
+
+	private SearchHit[] page = NO_HITS;
+
+	private int position = 0;
+
+	private String scrollId;
+
+	private boolean firstPage = true;
+
+	private boolean closed = false;
+
+	/**
+	 * Start the scroll, the first page is requested immediately
+	 * 
+	 * @param operations
+	 *          the template to execute the scroll requests with
+	 * @param request
+	 *          the search to scroll, its size is the page size
+	 * @param keepAlive
+	 *          how long the server keeps the scroll context between pages
+	 */
+	public ScrollIterator(final NodeOperations operations, final SearchRequest request, final TimeValue keepAlive) {
+		Assert.notNull(operations, "operations cannot be null");
+		Assert.notNull(request, "request cannot be null");
+		Assert.notNull(keepAlive, "keepAlive cannot be null");
+
+		this.operations = operations;
+		this.keepAlive = keepAlive;
+
+		request.scroll(keepAlive);
+		this.next = operations.executeAsync(new AsyncClientCallback<SearchResponse>() {
+			@Override
+			public void execute(final Client client, final ActionListener<SearchResponse> listener) {
+				client.search(request, listener);
+			}
+		});
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (position >= page.length) {
+			if (closed) {
+				return false;
+			}
+
+			final SearchResponse response;
+			try {
+				response = next.actionGet();
+			} catch (final RuntimeException e) {
+				next = null;
+				close();
+				throw e;
+			}
+			next = null;
+			scrollId = response.getScrollId();
+
+			final SearchHit[] hits = response.getHits().getHits();
+			// the first page of a scan carries no hits, only the scroll id
+			final boolean exhausted = hits.length == 0 && (!firstPage || response.getHits().getTotalHits() == 0);
+			firstPage = false;
+			if (exhausted) {
+				close();
+				return false;
+			}
+
+			page = hits;
+			position = 0;
+			next = fetch(scrollId);
+		}
+		return true;
+	}
+
+	@Override
+	public SearchHit next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final SearchHit hit = page[position];
+		page[position++] = null;
+		return hit;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("scroll hits cannot be removed");
+	}
+
+	/**
+	 * Stop scrolling and clear the scroll context, including the one of a page
+	 * still being prefetched
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		page = NO_HITS;
+
+		if (next != null) {
+			next.addListener(new ActionListener<SearchResponse>() {
+				@Override
+				public void onResponse(final SearchResponse response) {
+					clearScroll(response.getScrollId());
+				}
+
+				@Override
+				public void onFailure(final Throwable e) {
+					clearScroll(scrollId);
+				}
+			});
+			next = null;
+		} else {
+			clearScroll(scrollId);
+		}
+	}
+
+	private ListenableResponseFuture<SearchResponse> fetch(final String scrollId) {
+		return operations.executeAsync(new AsyncClientCallback<SearchResponse>() {
+			@Override
+			public void execute(final Client client, final ActionListener<SearchResponse> listener) {
+				client.searchScroll(Requests.searchScrollRequest(scrollId).scroll(keepAlive), listener);
+			}
+		});
+	}
+
+	private void clearScroll(final String scrollId) {
+		if (scrollId == null) {
+			return;
+		}
+		operations.executeAsync(new AsyncClientCallback<ClearScrollResponse>() {
+			@Override
+			public void execute(final Client client, final ActionListener<ClearScrollResponse> listener) {
+				final ClearScrollRequest request = new ClearScrollRequest();
+				request.addScrollId(scrollId);
+				client.clearScroll(request, listener);
+			}
+		}).addListener(new ActionListener<ClearScrollResponse>() {
+			@Override
+			public void onResponse(final ClearScrollResponse response) {
+			}
+
+			@Override
+			public void onFailure(final Throwable e) {
+				logger.debug("Failed to clear scroll, it will expire after " + keepAlive, e);
+			}
+		});
+	}
+
+}
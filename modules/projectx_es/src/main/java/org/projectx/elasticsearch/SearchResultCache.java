@@ -0,0 +1,318 @@
+package org.projectx.elasticsearch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.search.SearchHit;
+import org.projectx.index.HitIterator;
+import org.projectx.index.IndexSearchEngine;
+import org.projectx.index.SearchOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A caching {@link IndexSearchEngine} decorator for a {@link ClientTemplate},
+ * for popular queries repeated far more often than the index changes.
+ * <p>
+ * Results are kept per normalized query (whitespace collapsed), field, search
+ * options and result type, in an LRU map of at most <code>maxEntries</code>
+ * entries, each valid for <code>ttlMillis</code>. The whole cache is
+ * invalidated whenever the template reports a change of a searched index, i.e.
+ * on {@link ClientTemplate#refreshIndex(String) refresh}, index deletion and
+ * {@link BulkIndexer} writes through the same template; results of a search
+ * racing with an invalidation are not cached. The searched indices are the
+ * template's index and those named in {@link SearchOptions#getIndices()}, a
+ * change of an alias of one of them or of an index behind one of them counts
+ * too, changes of other indices leave the entries intact. Writes bypassing
+ * the template are only seen once the entries expire. Scrolls are never
+ * cached.
+ * <p>
+ * Cached lists are shared between callers and must not be modified.
+ * Statistics are exported through {@link SearchResultCacheMXBean}. A cache
+ * created for a shorter lifetime than its template must be {@link #close()
+ * closed} to unregister it from the template.
+ */
+public class SearchResultCache implements IndexSearchEngine<SearchHit>, IndexChangeListener, SearchResultCacheMXBean,
+		Closeable {
+
+	private static Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+
+	private final ClientTemplate template;
+
+	private final long ttlMillis;
+
+	private final Map<String, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final Set<String> searchedIndices = new CopyOnWriteArraySet<String>();
+
+	private long generation = 0;
+
+	public SearchResultCache(final ClientTemplate template, final int maxEntries, final long ttlMillis) {
+		Assert.notNull(template, "template cannot be null");
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		Assert.isTrue(ttlMillis > 0, "ttlMillis must be positive");
+
+		this.template = template;
+		this.ttlMillis = ttlMillis;
+		searchedIndices.add(template.getIndexName());
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				if (size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		template.addIndexChangeListener(this);
+	}
+
+	@Override
+	public <Q> List<SearchHit> search(final String field, final Q query, final int maxResults) {
+		final String key = "field|" + field + "|" + normalize(String.valueOf(query)) + "|" + maxResults;
+		List<SearchHit> result = get(key);
+		if (result == null) {
+			final long expected = currentGeneration();
+			result = template.search(field, query, maxResults);
+			put(key, result, expected);
+		}
+		return result;
+	}
+
+	@Override
+	public List<SearchHit> search(final String queryString, final int maxResults) {
+		final String key = "query|" + normalize(queryString) + "|" + maxResults;
+		List<SearchHit> result = get(key);
+		if (result == null) {
+			final long expected = currentGeneration();
+			result = template.search(queryString, maxResults);
+			put(key, result, expected);
+		}
+		return result;
+	}
+
+	@Override
+	public List<SearchHit> search(final String queryString, final SearchOptions options) {
+		final String key = "options|" + normalize(queryString) + "|" + key(options);
+		watch(options);
+		List<SearchHit> result = get(key);
+		if (result == null) {
+			final long expected = currentGeneration();
+			result = template.search(queryString, options);
+			put(key, result, expected);
+		}
+		return result;
+	}
+
+	@Override
+	public <R> List<R> search(final String queryString, final SearchOptions options, final Class<R> type) {
+		final String key = "typed|" + type.getName() + "|" + normalize(queryString) + "|" + key(options);
+		watch(options);
+		List<R> result = get(key);
+		if (result == null) {
+			final long expected = currentGeneration();
+			result = template.search(queryString, options, type);
+			put(key, result, expected);
+		}
+		return result;
+	}
+
+	@Override
+	public HitIterator<SearchHit> scroll(final String queryString, final int pageSize) {
+		return template.scroll(queryString, pageSize);
+	}
+
+	@Override
+	public void indexChanged(final String indexName) {
+		if (isSearched(indexName)) {
+			invalidations.incrementAndGet();
+			clear();
+		}
+	}
+
+	private void watch(final SearchOptions options) {
+		if (options.getIndices() != null) {
+			searchedIndices.addAll(Arrays.asList(options.getIndices()));
+		}
+	}
+
+	/**
+	 * Whether the changed index is a searched index, an alias of one or an
+	 * index behind one. Patterns and failures to resolve the aliases count as
+	 * searched.
+	 */
+	private boolean isSearched(final String indexName) {
+		if (indexName == null || searchedIndices.contains(indexName)) {
+			return true;
+		}
+		final List<String> names = new ArrayList<String>(searchedIndices);
+		for (final String name : names) {
+			if (isPattern(name)) {
+				return true;
+			}
+		}
+		if (isPattern(indexName)) {
+			return true;
+		}
+
+		names.add(indexName);
+		final GetAliasesResponse response;
+		try {
+			response = template.executeGet(new NodeCallback<GetAliasesResponse>() {
+				@Override
+				public ActionFuture<GetAliasesResponse> execute(final IndicesAdminClient admin) {
+					return admin.getAliases(new GetAliasesRequest(names.toArray(new String[names.size()])));
+				}
+			});
+		} catch (final RuntimeException e) {
+			logger.warn("failed to resolve the aliases of index " + indexName + ", invalidating the cache", e);
+			return true;
+		}
+
+		for (final Iterator<String> it = response.getAliases().keysIt(); it.hasNext();) {
+			final String index = it.next();
+			for (final AliasMetaData alias : response.getAliases().get(index)) {
+				if (index.equals(indexName) ? searchedIndices.contains(alias.alias()) : (alias.alias().equals(
+						indexName) && searchedIndices.contains(index))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isPattern(final String name) {
+		return name.length() == 0 || "_all".equals(name) || name.indexOf('*') >= 0 || name.indexOf(',') >= 0;
+	}
+
+	/**
+	 * Unregister the cache from the template's index changes and drop all
+	 * cached results
+	 */
+	@Override
+	public void close() {
+		template.removeIndexChangeListener(this);
+		clear();
+	}
+
+	@Override
+	public synchronized void clear() {
+		generation++;
+		entries.clear();
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRatio() {
+		final long hitCount = hits.get();
+		final long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	@Override
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized <R> List<R> get(final String key) {
+		final Entry entry = entries.get(key);
+		if (entry != null && System.currentTimeMillis() < entry.expireAt) {
+			hits.incrementAndGet();
+			return (List<R>) entry.result;
+		}
+		if (entry != null) {
+			entries.remove(key);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private synchronized long currentGeneration() {
+		return generation;
+	}
+
+	private synchronized <R> void put(final String key, final List<R> result, final long expectedGeneration) {
+		if (generation == expectedGeneration) {
+			entries.put(key, new Entry(Collections.unmodifiableList(result), System.currentTimeMillis() + ttlMillis));
+		}
+	}
+
+	private static String normalize(final String query) {
+		return query == null ? "" : query.trim().replaceAll("\\s+", " ");
+	}
+
+	private static String key(final SearchOptions options) {
+		final StringBuilder key = new StringBuilder();
+		key.append(options.getSearchType()).append('|').append(Arrays.toString(options.getIndices())).append('|')
+				.append(Arrays.toString(options.getTypes())).append('|').append(options.getRouting()).append('|')
+				.append(options.getPreference()).append('|')
+				.append(Arrays.toString(options.getFields())).append('|')
+				.append(Arrays.toString(options.getSourceFields())).append('|');
+		for (final SearchOptions.Sort sort : options.getSorts()) {
+			key.append(sort.getField()).append(sort.isAscending() ? ":asc," : ":desc,");
+		}
+		key.append('|').append(options.getFrom()).append('|').append(options.getSize()).append('|')
+				.append(options.getTimeoutMillis());
+		return key.toString();
+	}
+
+	private static class Entry {
+
+		final List<?> result;
+
+		final long expireAt;
+
+		Entry(final List<?> result, final long expireAt) {
+			this.result = result;
+			this.expireAt = expireAt;
+		}
+	}
+
+}
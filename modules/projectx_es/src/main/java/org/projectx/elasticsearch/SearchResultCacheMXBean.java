@@ -0,0 +1,25 @@
+package org.projectx.elasticsearch;
+
+/**
+ * Management interface exporting the statistics of a {@link SearchResultCache}
+ */
+public interface SearchResultCacheMXBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRatio();
+
+	long getEvictions();
+
+	long getInvalidations();
+
+	int getSize();
+
+	/**
+	 * Drop all cached results
+	 */
+	void clear();
+
+}
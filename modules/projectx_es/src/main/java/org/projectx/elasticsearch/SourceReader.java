@@ -0,0 +1,78 @@
+package org.projectx.elasticsearch;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Maps the source of {@link SearchHit}s to typed objects. The source bytes are
+ * handed to Jackson as they are, without building an intermediate
+ * <code>String</code> or map, and one {@link ObjectReader} is kept per target
+ * type. Properties missing from the target type are ignored, so a partial
+ * source (see {@link org.projectx.index.SearchOptions#sourceFields(String...)})
+ * maps to a partially populated object.
+ */
+public class SourceReader {
+
+	private final ObjectMapper mapper;
+
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+	public SourceReader() {
+		this(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+	}
+
+	public SourceReader(final ObjectMapper mapper) {
+		Assert.notNull(mapper, "mapper cannot be null");
+
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Map the source of a hit
+	 * 
+	 * @param hit
+	 *          the hit to map
+	 * @param type
+	 *          the target type
+	 * @return the mapped source, or null if the hit carries no source
+	 */
+	public <T> T read(final SearchHit hit, final Class<T> type) {
+		final BytesReference source = hit.sourceRef();
+		if (source == null) {
+			return null;
+		}
+
+		final ObjectReader reader = reader(type);
+		try {
+			if (source.hasArray()) {
+				return reader.readValue(source.array(), source.arrayOffset(), source.length());
+			}
+			return reader.readValue(source.streamInput());
+		} catch (final IOException e) {
+			throw new ElasticsearchParseException("Failed to map source of [" + hit.getId() + "] to " + type.getName(), e);
+		}
+	}
+
+	private ObjectReader reader(final Class<?> type) {
+		ObjectReader reader = readers.get(type);
+		if (reader == null) {
+			reader = mapper.reader(type);
+			final ObjectReader existing = readers.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+}
@@ -0,0 +1,231 @@
+package org.projectx.elasticsearch;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Search-as-you-type suggestions from a <code>completion</code> field, served
+ * from an in-process cache for short prefixes.
+ * <p>
+ * The first keystrokes of a query are both the most frequent and the least
+ * selective, so the top suggestions of every prefix of up to
+ * <code>maxPrefixLength</code> characters are kept locally in an LRU map of
+ * at most {@link #setMaxEntries(int) maxEntries} prefixes. Cached prefixes are
+ * re-queried every <code>refreshIntervalMillis</code> on a background thread
+ * so callers never wait for a refresh; a prefix not requested since the
+ * previous refresh is dropped instead. Longer prefixes, or requests for more
+ * than {@link #setMaxSuggestions(int) maxSuggestions} suggestions, always go
+ * to the cluster.
+ * <p>
+ * Returned lists are shared between callers and must not be modified.
+ * 
+ * @see ClientTemplate#suggest(String, String, int)
+ */
+public class Suggester implements Closeable {
+
+	private static Logger logger = LoggerFactory.getLogger(Suggester.class);
+
+	private final ClientTemplate template;
+
+	private final String field;
+
+	private final int maxPrefixLength;
+
+	private final Map<String, Entry> entries;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private volatile int maxSuggestions = 10;
+
+	private volatile int maxEntries = 10000;
+
+	public Suggester(final ClientTemplate template, final String field, final int maxPrefixLength,
+			final long refreshIntervalMillis) {
+		Assert.notNull(template, "template cannot be null");
+		Assert.hasText(field, "field cannot be empty");
+		Assert.isTrue(refreshIntervalMillis > 0, "refreshIntervalMillis must be positive");
+
+		this.template = template;
+		this.field = field;
+		this.maxPrefixLength = maxPrefixLength;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "suggester-refresh-" + field);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} catch (final Exception e) {
+					logger.warn("Refreshing suggestions of " + field + " failed", e);
+				}
+			}
+		}, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param prefix
+	 *          the text typed so far
+	 * @return up to {@link #setMaxSuggestions(int) maxSuggestions} completions
+	 *         of the prefix, best first
+	 */
+	public List<String> suggest(final String prefix) {
+		return suggest(prefix, maxSuggestions);
+	}
+
+	/**
+	 * @param prefix
+	 *          the text typed so far
+	 * @param size
+	 *          the maximum number of suggestions
+	 * @return up to <code>size</code> completions of the prefix, best first
+	 */
+	public List<String> suggest(final String prefix, final int size) {
+		if (prefix == null || prefix.length() == 0) {
+			return Collections.emptyList();
+		}
+		if (prefix.length() > maxPrefixLength || size > maxSuggestions) {
+			return template.suggest(field, prefix, size);
+		}
+
+		List<String> suggestions = get(prefix);
+		if (suggestions == null) {
+			misses.incrementAndGet();
+			suggestions = Collections.unmodifiableList(template.suggest(field, prefix, maxSuggestions));
+			put(prefix, suggestions);
+		} else {
+			hits.incrementAndGet();
+		}
+		return suggestions.size() > size ? suggestions.subList(0, size) : suggestions;
+	}
+
+	/**
+	 * Re-query the prefixes requested since the previous refresh and drop the
+	 * others, called periodically on the background thread
+	 */
+	void refresh() {
+		final List<String> prefixes = new ArrayList<String>();
+		synchronized (this) {
+			for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+				if (entry.getValue().requested) {
+					prefixes.add(entry.getKey());
+					entry.getValue().requested = false;
+				}
+			}
+			entries.keySet().retainAll(prefixes);
+		}
+
+		for (final String prefix : prefixes) {
+			final List<String> suggestions = Collections.unmodifiableList(template.suggest(field, prefix, maxSuggestions));
+			synchronized (this) {
+				final Entry entry = entries.get(prefix);
+				if (entry != null) {
+					entry.suggestions = suggestions;
+				}
+			}
+		}
+	}
+
+	private synchronized List<String> get(final String prefix) {
+		final Entry entry = entries.get(prefix);
+		if (entry == null) {
+			return null;
+		}
+		entry.requested = true;
+		return entry.suggestions;
+	}
+
+	private synchronized void put(final String prefix, final List<String> suggestions) {
+		entries.put(prefix, new Entry(suggestions, true));
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Drop all cached suggestions
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Set the number of suggestions cached per prefix, the largest size served
+	 * from the cache (default 10)
+	 */
+	public void setMaxSuggestions(final int maxSuggestions) {
+		Assert.isTrue(maxSuggestions > 0, "maxSuggestions must be positive");
+		this.maxSuggestions = maxSuggestions;
+		clear();
+	}
+
+	/**
+	 * Set the maximum number of cached prefixes (default 10000)
+	 */
+	public void setMaxEntries(final int maxEntries) {
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Stop the background refresh, the suggester keeps serving (and caching)
+	 * requests
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	private static class Entry {
+
+		List<String> suggestions;
+
+		boolean requested;
+
+		Entry(final List<String> suggestions, final boolean requested) {
+			this.suggestions = suggestions;
+			this.requested = requested;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package org.projectx.index;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * A streaming iterator over the hits of a search. Hits are fetched page by page
+ * as the iterator advances, so the whole result set never needs to be held in
+ * memory. Server side resources held for the search are released once the
+ * iterator is exhausted or {@link #close() closed}, callers abandoning an
+ * iterator early must close it.
+ */
+public interface HitIterator<T> extends Iterator<T>, Closeable {
+
+  /**
+   * Release the resources held for the search, without throwing checked
+   * exceptions
+   */
+  @Override
+  void close();
+
+}
@@ -41,5 +41,43 @@ public interface IndexSearchEngine<T> {
    * @return a list of hits
    */
   List<T> search(final String queryString, int maxResults);
-  
+
+  /**
+   * Search with explicit control over where and how the query is executed and
+   * which hits and fields are returned
+   * 
+   * @param queryString
+   *          the query string
+   * @param options
+   *          the search options
+   * @return a list of hits
+   */
+  List<T> search(final String queryString, SearchOptions options);
+
+  /**
+   * Search and map the source document of each hit to the requested type
+   * 
+   * @param queryString
+   *          the query string
+   * @param options
+   *          the search options
+   * @param type
+   *          the type to map the documents to
+   * @return a list of mapped documents
+   */
+  <R> List<R> search(final String queryString, SearchOptions options, Class<R> type);
+
+  /**
+   * Stream all the hits matching the provided query, fetching them
+   * <code>pageSize</code> at a time
+   * 
+   * @param queryString
+   *          the query string
+   * @param pageSize
+   *          the number of hits to fetch per round trip
+   * @return an iterator over all the hits, which must be closed if not
+   *         exhausted
+   */
+  HitIterator<T> scroll(final String queryString, int pageSize);
+
 }
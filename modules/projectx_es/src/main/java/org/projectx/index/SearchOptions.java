@@ -0,0 +1,190 @@
+package org.projectx.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Engine neutral options for a search: where to search, how to execute the
+ * search and what to return. Unset options fall back to the defaults of the
+ * {@link IndexSearchEngine}, which usually searches its own index. Setters
+ * return the options so they can be chained:
+ * 
+ * <pre>
+ * new SearchOptions().types(&quot;log&quot;).fields(&quot;path&quot;).sort(&quot;modified&quot;, false).size(20)
+ * </pre>
+ */
+public class SearchOptions {
+
+  private String searchType;
+
+  private String[] indices;
+
+  private String[] types;
+
+  private String routing;
+
+  private String preference;
+
+  private String[] fields;
+
+  private String[] sourceFields;
+
+  private final List<Sort> sorts = new ArrayList<Sort>();
+
+  private int from = 0;
+
+  private int size = 10;
+
+  private long timeoutMillis = 0;
+
+  /**
+   * The engine specific execution type, e.g. <code>query_then_fetch</code>
+   */
+  public SearchOptions searchType(final String searchType) {
+    this.searchType = searchType;
+    return this;
+  }
+
+  /**
+   * The indices to search instead of the engine's index
+   */
+  public SearchOptions indices(final String... indices) {
+    this.indices = indices;
+    return this;
+  }
+
+  public SearchOptions types(final String... types) {
+    this.types = types;
+    return this;
+  }
+
+  /**
+   * Restrict the search to the shards the routing value maps to
+   */
+  public SearchOptions routing(final String routing) {
+    this.routing = routing;
+    return this;
+  }
+
+  /**
+   * Engine specific preference of the shard copies to search, e.g.
+   * <code>_local</code> to read from copies held by an embedded node
+   */
+  public SearchOptions preference(final String preference) {
+    this.preference = preference;
+    return this;
+  }
+
+  /**
+   * The fields to return for each hit instead of the whole document
+   */
+  public SearchOptions fields(final String... fields) {
+    this.fields = fields;
+    return this;
+  }
+
+  /**
+   * Return only these fields (wildcards allowed) of each hit's source document,
+   * cutting transfer and parsing costs of typed searches
+   */
+  public SearchOptions sourceFields(final String... sourceFields) {
+    this.sourceFields = sourceFields;
+    return this;
+  }
+
+  /**
+   * Add a sort criteria, hits are sorted by score if none is added
+   */
+  public SearchOptions sort(final String field, final boolean ascending) {
+    this.sorts.add(new Sort(field, ascending));
+    return this;
+  }
+
+  public SearchOptions from(final int from) {
+    this.from = from;
+    return this;
+  }
+
+  public SearchOptions size(final int size) {
+    this.size = size;
+    return this;
+  }
+
+  /**
+   * Time after which the search returns the hits collected so far, 0 for no
+   * timeout
+   */
+  public SearchOptions timeoutMillis(final long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    return this;
+  }
+
+  public String getSearchType() {
+    return searchType;
+  }
+
+  public String[] getIndices() {
+    return indices;
+  }
+
+  public String[] getTypes() {
+    return types;
+  }
+
+  public String getRouting() {
+    return routing;
+  }
+
+  public String getPreference() {
+    return preference;
+  }
+
+  public String[] getFields() {
+    return fields;
+  }
+
+  public String[] getSourceFields() {
+    return sourceFields;
+  }
+
+  public List<Sort> getSorts() {
+    return Collections.unmodifiableList(sorts);
+  }
+
+  public int getFrom() {
+    return from;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * A single sort criteria
+   */
+  public static class Sort {
+
+    private final String field;
+
+    private final boolean ascending;
+
+    public Sort(final String field, final boolean ascending) {
+      this.field = field;
+      this.ascending = ascending;
+    }
+
+    public String getField() {
+      return field;
+    }
+
+    public boolean isAscending() {
+      return ascending;
+    }
+  }
+
+}
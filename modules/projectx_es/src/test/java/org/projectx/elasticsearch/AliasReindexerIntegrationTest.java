@@ -0,0 +1,65 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.projectx.index.SearchOptions;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class AliasReindexerIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	private static final String ALIAS = "projectx_alias";
+
+	@Test
+	public void reindexSwapsAlias() {
+		final AliasReindexer reindexer = new AliasReindexer(nodeTemplate, ALIAS);
+		reindexer.setPageSize(7);
+
+		final String first = reindexer.reindex(null, null, null);
+		try {
+			assertEquals("alias should point to the first index", Collections.singletonList(first),
+					reindexer.aliasedIndices());
+			for (int i = 0; i < 40; i++) {
+				indexIntoAlias(i);
+			}
+			nodeTemplate.refreshIndex(ALIAS);
+
+			final String second = reindexer.reindex(null, null, null);
+			try {
+				assertEquals("alias should point to the second index", Collections.singletonList(second),
+						reindexer.aliasedIndices());
+				assertFalse("first index should be dropped", nodeTemplate.indexExists(first));
+				final List<?> hits = nodeTemplate.search("*", new SearchOptions().indices(ALIAS).size(100));
+				assertEquals("documents were not copied", 40, hits.size());
+			} finally {
+				nodeTemplate.deleteIndex(second);
+			}
+		} finally {
+			if (nodeTemplate.indexExists(first)) {
+				nodeTemplate.deleteIndex(first);
+			}
+		}
+	}
+
+	private void indexIntoAlias(final int rownum) {
+		nodeTemplate.executeGet(new ClientCallback<IndexResponse>() {
+			@Override
+			public ActionFuture<IndexResponse> execute(final Client client) {
+				return client.index(Requests.indexRequest(ALIAS).type("log").id(String.valueOf(rownum))
+						.source("{\"rownum\":" + rownum + "}"));
+			}
+		});
+	}
+}
@@ -0,0 +1,8 @@
+package org.projectx.elasticsearch;
+
+/**
+ * JUnit category of long running benchmarks which assert little and are
+ * excluded from the default test run; run them with <code>-Prun-benchmark</code>.
+ */
+public interface Benchmark {
+}
@@ -0,0 +1,93 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.count.CountResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class BulkIndexerIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void indexInBatches() throws Exception {
+		final List<BulkIndexer.BatchStats> batches = new CopyOnWriteArrayList<BulkIndexer.BatchStats>();
+		final BulkIndexer indexer = BulkIndexer.builder(nodeTemplate).setBulkActions(100).setConcurrentRequests(2)
+				.setListener(new BulkIndexer.Listener() {
+					@Override
+					public void afterBulk(final BulkIndexer.BatchStats stats) {
+						batches.add(stats);
+					}
+				}).build();
+
+		for (int i = 0; i < 250; i++) {
+			indexer.index("log", String.valueOf(i),
+					XContentFactory.jsonBuilder().startObject().field("rownum", i).endObject());
+		}
+		assertTrue("in-flight batches did not complete", indexer.awaitClose(30, TimeUnit.SECONDS));
+
+		assertEquals("incorrect number of batches", 3, batches.size());
+		assertEquals("incorrect number of actions", 250, indexer.getTotalActions());
+		assertEquals("unexpected failures", 0, indexer.getTotalFailures());
+
+		refreshIndex();
+		assertEquals("incorrect number of documents", 250, count());
+	}
+
+	@Test
+	public void flushInterval() throws Exception {
+		final BulkIndexer indexer = BulkIndexer.builder(nodeTemplate).setBulkActions(1000).setFlushIntervalMillis(100)
+				.build();
+		try {
+			indexer.index("log", "1", "{\"rownum\":1}");
+			for (int i = 0; (i < 50) && (indexer.getTotalActions() == 0); i++) {
+				Thread.sleep(100);
+			}
+			assertEquals("batch was not flushed by the interval", 1, indexer.getTotalActions());
+		} finally {
+			indexer.close();
+		}
+	}
+
+	@Test
+	public void updateInBatches() throws Exception {
+		final BulkIndexer indexer = BulkIndexer.builder(nodeTemplate).setConcurrentRequests(0).build();
+		indexer.index("log", "1", XContentFactory.jsonBuilder().startObject().field("rownum", 1).field("stock", 5)
+				.endObject());
+		indexer.flush();
+
+		indexer.update("log", "1", XContentFactory.jsonBuilder().startObject().field("stock", 4).endObject());
+		indexer.upsert("log", "2", XContentFactory.jsonBuilder().startObject().field("rownum", 2).field("stock", 1)
+				.endObject());
+		indexer.update("log", "3", XContentFactory.jsonBuilder().startObject().field("stock", 1).endObject());
+		indexer.close();
+
+		assertEquals("incorrect number of actions", 4, indexer.getTotalActions());
+		assertEquals("updating a missing document should fail", 1, indexer.getTotalFailures());
+		refreshIndex();
+		assertEquals("incorrect number of documents", 2, count());
+		assertEquals("partial update should keep the other fields", 1, search("stock", 4, 10).size());
+		assertEquals("partial update should keep the other fields", 1, search("rownum", 1, 10).size());
+	}
+
+	private long count() {
+		return nodeTemplate.executeGet(new ClientCallback<CountResponse>() {
+			@Override
+			public ActionFuture<CountResponse> execute(final Client client) {
+				return client.count(Requests.countRequest(nodeTemplate.getIndexName()));
+			}
+		}).getCount();
+	}
+}
@@ -0,0 +1,95 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.projectx.index.SearchOptions;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class BulkLoadSessionIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void loadAndRestoreSettings() {
+		final String refreshInterval = setting("index.refresh_interval");
+		final String replicas = setting("index.number_of_replicas");
+
+		final BulkLoadSession session = nodeTemplate.beginBulkLoad();
+		session.setMaxNumSegments(1);
+		session.setHealthTimeoutMillis(1000);
+		assertEquals("refresh should be disabled during the load", "-1", setting("index.refresh_interval"));
+		assertEquals("replicas should be disabled during the load", "0", setting("index.number_of_replicas"));
+
+		final BulkIndexer indexer = session.indexer(BulkIndexer.builder(nodeTemplate).setBulkActions(50));
+		for (int i = 0; i < 120; i++) {
+			indexer.index("log", String.valueOf(i), "{\"rownum\":" + i + "}");
+		}
+		final BulkLoadSession.Report report = session.finish();
+
+		assertEquals("incorrect number of documents", 120, report.getDocuments());
+		assertEquals("unexpected failures", 0, report.getFailures());
+		assertEquals("loaded documents should be searchable", 120, search("rownum", "[0 TO 200]", 200).size());
+		assertEquals("refresh interval was not restored", refreshInterval == null ? "1s" : refreshInterval,
+				setting("index.refresh_interval"));
+		assertEquals("replicas were not restored", replicas, setting("index.number_of_replicas"));
+		assertFalse("primaries should be active", report.getStatus() == ClusterHealthStatus.RED);
+	}
+
+	@Test
+	public void indexerWritesToLoadedIndex() {
+		final String other = nodeTemplate.getIndexName() + "_load";
+		nodeTemplate.createIndex(other, null, null, null);
+		try {
+			final BulkLoadSession session = nodeTemplate.beginBulkLoad(other);
+			final BulkIndexer indexer = session.indexer(BulkIndexer.builder(nodeTemplate));
+			for (int i = 0; i < 10; i++) {
+				indexer.index("log", String.valueOf(i), "{\"rownum\":" + i + "}");
+			}
+			assertEquals("unexpected failures", 0, session.finish().getFailures());
+
+			assertEquals("documents should be loaded into the session's index", 10,
+					nodeTemplate.search("*", new SearchOptions().indices(other).size(100)).size());
+			assertEquals("documents should not leak into the template's index", 0, search("rownum", "[0 TO 200]", 200)
+					.size());
+		} finally {
+			nodeTemplate.deleteIndex(other);
+		}
+	}
+
+	@Test
+	public void abortSkipsRestore() {
+		final BulkLoadSession session = nodeTemplate.beginBulkLoad();
+		final BulkIndexer indexer = session.indexer(BulkIndexer.builder(nodeTemplate));
+		indexer.index("log", "1", "{\"rownum\":1}");
+		session.abort();
+		session.close();
+
+		assertEquals("an aborted load should not restore the settings", "-1", setting("index.refresh_interval"));
+		try {
+			session.finish();
+			fail("an aborted session cannot be finished");
+		} catch (final IllegalStateException expected) {
+			// the index is left as the load found it
+		}
+	}
+
+	private String setting(final String name) {
+		final GetSettingsResponse response = nodeTemplate.executeGet(new NodeCallback<GetSettingsResponse>() {
+			@Override
+			public ActionFuture<GetSettingsResponse> execute(final IndicesAdminClient admin) {
+				return admin.getSettings(new GetSettingsRequest().indices(nodeTemplate.getIndexName()));
+			}
+		});
+		return response.getSetting(nodeTemplate.getIndexName(), name);
+	}
+}
@@ -0,0 +1,34 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.elasticsearch.client.transport.TransportClient;
+import org.junit.Test;
+
+public class ElasticsearchTransportClientFactoryBeanTest {
+
+	@Test
+	public void propertiesOverrideSettings() throws Exception {
+		final ElasticsearchTransportClientFactoryBean factory = new ElasticsearchTransportClientFactoryBean();
+		factory.setSettings(Collections.singletonMap("client.transport.ping_timeout", "10s"));
+		factory.setClusterName("projectx.test.cluster");
+		factory.setSniff(true);
+		factory.setPingTimeout("2s");
+		factory.setNodesSamplerInterval("1s");
+		factory.setConnectionsPerNodeReg(4);
+		factory.afterPropertiesSet();
+		try {
+			final TransportClient client = (TransportClient) factory.getObject();
+			assertEquals("projectx.test.cluster", client.settings().get("cluster.name"));
+			assertEquals("true", client.settings().get("client.transport.sniff"));
+			assertEquals("2s", client.settings().get("client.transport.ping_timeout"));
+			assertEquals("1s", client.settings().get("client.transport.nodes_sampler_interval"));
+			assertEquals("4", client.settings().get("transport.connections_per_node.reg"));
+			assertEquals("no address is listed, so no node is connected", 0, factory.checkHealth());
+		} finally {
+			factory.destroy();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.annotation.Resource;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.projectx.index.SearchOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Compares a read-heavy workload through a transport client against the same
+ * workload through the client of an embedded {@link ElasticsearchNodeFactoryBean.Preset#DATA
+ * data node} reading its local shards. Excluded from the default test run, see
+ * {@link Benchmark}.
+ */
+@Category(Benchmark.class)
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch-benchmark.xml" })
+public class EmbeddedNodeBenchmarkTest extends ElasticsearchNodeTempTestBase {
+
+	private static Logger logger = LoggerFactory.getLogger(EmbeddedNodeBenchmarkTest.class);
+
+	private static final int DOCUMENTS = 200;
+
+	private static final int WARMUP = 200;
+
+	private static final int ITERATIONS = 2000;
+
+	@Resource
+	ClientTemplate clientTemplate;
+
+	@Test
+	public void transportClientVersusEmbeddedNode() throws Exception {
+		for (int i = 0; i < DOCUMENTS; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", i).field("contents", "line " + i)
+					.endObject());
+		}
+		refreshIndex();
+
+		final SearchOptions options = new SearchOptions().preference("_local").size(10);
+		read(clientTemplate, options, WARMUP);
+		read(nodeTemplate, options, WARMUP);
+
+		final long transportNanos = read(clientTemplate, options, ITERATIONS);
+		final long embeddedNanos = read(nodeTemplate, options, ITERATIONS);
+
+		logger.info("transport client: {} us/search, embedded node: {} us/search", transportNanos / ITERATIONS / 1000,
+				embeddedNanos / ITERATIONS / 1000);
+	}
+
+	private long read(final ClientTemplate template, final SearchOptions options, final int iterations) {
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			assertEquals("incorrect number of results", 1,
+					template.search("rownum:" + (i % DOCUMENTS), options).size());
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,28 @@
+package org.projectx.elasticsearch;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Finds a free local TCP port for test contexts which need a node listening
+ * on a real transport port, so they do not collide with other nodes running
+ * on the build machine.
+ */
+public final class FreePort {
+
+	private FreePort() {
+	}
+
+	/**
+	 * @return a currently unused local port, as a string so it can be used
+	 *         directly in settings maps
+	 */
+	public static String find() throws IOException {
+		final ServerSocket socket = new ServerSocket(0);
+		try {
+			return String.valueOf(socket.getLocalPort());
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketBounds() {
+		for (final long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE }) {
+			final int index = LatencyHistogram.bucketIndex(value);
+			assertTrue("value above its bucket: " + value, LatencyHistogram.bucketUpperBound(index) >= value);
+			if (index > 0) {
+				assertTrue("value within the previous bucket: " + value,
+						LatencyHistogram.bucketUpperBound(index - 1) < value);
+			}
+		}
+	}
+
+	@Test
+	public void percentile() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals("incorrect count", 1000, histogram.getCount());
+		assertEquals("incorrect max", 1000, histogram.getMax());
+		assertEquals("incorrect mean", 500.5, histogram.getMean(), 0.001);
+		final long median = histogram.percentile(50);
+		assertTrue("median out of the bucket error bound: " + median, median >= 500 && median <= 500 * 1.0625);
+		assertEquals("the top percentile is bounded by the max", 1000, histogram.percentile(100));
+
+		histogram.reset();
+		assertEquals("reset should clear the count", 0, histogram.getCount());
+		assertEquals("an empty histogram has no percentiles", 0, histogram.percentile(99));
+	}
+}
@@ -0,0 +1,42 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.projectx.index.SearchOptions;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class MultiSearchBatcherIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void multiSearch() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", i).endObject());
+		}
+		refreshIndex();
+
+		final MultiSearch multiSearch = nodeTemplate.prepareMultiSearch();
+		final ListenableResponseFuture<SearchResponse> one = multiSearch.add("rownum:1", new SearchOptions());
+		final ListenableResponseFuture<SearchResponse> all = multiSearch.add("*", new SearchOptions());
+		multiSearch.execute();
+
+		assertEquals("incorrect number of results", 1, one.actionGet().getHits().getTotalHits());
+		assertEquals("incorrect number of results", 3, all.actionGet().getHits().getTotalHits());
+
+		final MultiSearchBatcher batcher = new MultiSearchBatcher(nodeTemplate, 20, 10);
+		try {
+			final ListenableResponseFuture<SearchResponse> batchedOne = batcher.submit("rownum:2", new SearchOptions());
+			final ListenableResponseFuture<SearchResponse> batchedAll = batcher.submit("*", new SearchOptions());
+			assertEquals("incorrect number of results", 1, batchedOne.actionGet().getHits().getTotalHits());
+			assertEquals("incorrect number of results", 3, batchedAll.actionGet().getHits().getTotalHits());
+		} finally {
+			batcher.close();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.projectx.index.HitIterator;
+import org.projectx.index.SearchOptions;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class NodeTemplateIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void searchAsync() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", i).endObject());
+		}
+		refreshIndex();
+
+		final ListenableResponseFuture<SearchResponse> first = nodeTemplate.searchAsync("rownum", 1, 10);
+		final ListenableResponseFuture<SearchResponse> all = nodeTemplate.searchAsync("*", 10);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicLong totalHits = new AtomicLong();
+		all.addListener(new ActionListener<SearchResponse>() {
+			@Override
+			public void onResponse(final SearchResponse response) {
+				totalHits.set(response.getHits().getTotalHits());
+				latch.countDown();
+			}
+
+			@Override
+			public void onFailure(final Throwable e) {
+				latch.countDown();
+			}
+		});
+
+		assertEquals("incorrect number of results", 1, first.actionGet().getHits().getHits().length);
+		assertTrue("listener was not notified", latch.await(10, TimeUnit.SECONDS));
+		assertEquals("incorrect number of results", 3, totalHits.get());
+	}
+
+	@Test
+	public void indexExists() {
+		final String otherIndex = nodeTemplate.getIndexName() + "-other";
+		assertTrue("index should exist", nodeTemplate.indexExists());
+		assertFalse("index should not exist", nodeTemplate.indexExists(otherIndex));
+
+		nodeTemplate.createIndex(otherIndex, null, null, null);
+		assertTrue("created index should exist", nodeTemplate.indexExists(otherIndex));
+
+		nodeTemplate.deleteIndex(otherIndex);
+		assertFalse("deleted index should not be cached as existing", nodeTemplate.indexExists(otherIndex));
+	}
+
+	@Test
+	public void scroll() throws Exception {
+		for (int i = 1; i <= 25; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", i).endObject());
+		}
+		refreshIndex();
+
+		final Set<String> ids = new HashSet<String>();
+		final HitIterator<SearchHit> hits = nodeTemplate.scroll("*", 2);
+		try {
+			while (hits.hasNext()) {
+				ids.add(hits.next().getId());
+			}
+		} finally {
+			hits.close();
+		}
+		assertEquals("incorrect number of scrolled hits", 25, ids.size());
+		assertFalse("exhausted iterator should stay exhausted", hits.hasNext());
+	}
+
+	@Test
+	public void searchWithOptions() throws Exception {
+		for (int i = 1; i <= 5; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", i).field("contents", "line " + i)
+					.endObject());
+		}
+		refreshIndex();
+
+		final List<SearchHit> hits = nodeTemplate.search("*",
+				new SearchOptions().types("log").fields("rownum").sort("rownum", false).from(1).size(2));
+
+		assertEquals("incorrect number of results", 2, hits.size());
+		assertEquals("incorrect sort order", 4, ((Number) hits.get(0).field("rownum").getValue()).intValue());
+		assertEquals("incorrect sort order", 3, ((Number) hits.get(1).field("rownum").getValue()).intValue());
+		assertEquals("only the requested field should be fetched", null, hits.get(0).field("contents"));
+	}
+
+	@Test
+	public void typedSearch() throws Exception {
+		index(XContentFactory.jsonBuilder().startObject().field("rownum", 7).field("contents", "seven").endObject());
+		refreshIndex();
+
+		final List<Line> lines = nodeTemplate.search("rownum:7", new SearchOptions(), Line.class);
+		assertEquals("incorrect number of results", 1, lines.size());
+		assertEquals("incorrect rownum", 7, lines.get(0).rownum);
+		assertEquals("incorrect contents", "seven", lines.get(0).contents);
+
+		final List<Line> projected = nodeTemplate.search("rownum:7", new SearchOptions().sourceFields("rownum"),
+				Line.class);
+		assertEquals("incorrect rownum", 7, projected.get(0).rownum);
+		assertNull("only the requested source fields should be fetched", projected.get(0).contents);
+	}
+
+	public static class Line {
+
+		public int rownum;
+
+		public String contents;
+	}
+
+	@Test
+	public void aggregations() throws Exception {
+		final String[] categories = { "books", "books", "books", "music", "music", "games" };
+		for (int i = 0; i < categories.length; i++) {
+			index(XContentFactory.jsonBuilder().startObject().field("category", categories[i]).field("price", i * 10)
+					.endObject());
+		}
+		refreshIndex();
+
+		final Buckets terms = nodeTemplate.terms("*", "category", 2);
+		assertEquals("incorrect number of buckets", 2, terms.size());
+		assertEquals("buckets should be ordered by count", "books", terms.getKeys()[0]);
+		assertEquals("incorrect count", 3, terms.getCounts()[0]);
+		assertEquals("incorrect count", 2, terms.count("music"));
+		assertEquals("incorrect total hits", 6, terms.getTotalHits());
+
+		final Buckets histogram = nodeTemplate.histogram("category:books", "price", 20);
+		assertEquals("incorrect number of buckets", 2, histogram.size());
+		assertEquals("incorrect bucket key", 0, histogram.getNumericKeys()[0], 0);
+		assertEquals("incorrect count", 2, histogram.getCounts()[0]);
+		assertEquals("incorrect count", 1, histogram.getCounts()[1]);
+
+		final Buckets range = nodeTemplate.range("*", "price", 10, 30);
+		assertEquals("incorrect number of buckets", 3, range.size());
+		assertEquals("incorrect counts", "[1, 2, 3]", Arrays.toString(range.getCounts()));
+
+		assertEquals("incorrect cardinality", 3, nodeTemplate.cardinality("*", "category"));
+	}
+
+	@Test
+	public void partialUpdate() throws Exception {
+		final UpdateResponse created = nodeTemplate.upsert("log", "1", XContentFactory.jsonBuilder().startObject()
+				.field("rownum", 1).field("price", 10).endObject());
+		assertTrue("missing document should be created", created.isCreated());
+
+		final UpdateResponse updated = nodeTemplate.update("log", "1", XContentFactory.jsonBuilder().startObject()
+				.field("price", 12).endObject());
+		assertFalse("existing document should be updated", updated.isCreated());
+		assertEquals("incorrect version", 2, updated.getVersion());
+		refreshIndex();
+
+		final List<SearchHit> hits = search("price", 12, 10);
+		assertEquals("incorrect number of results", 1, hits.size());
+		assertEquals("other fields should be kept", 1, ((Number) hits.get(0).getSource().get("rownum")).intValue());
+
+		try {
+			nodeTemplate.update("log", "2", XContentFactory.jsonBuilder().startObject().field("price", 1).endObject());
+			fail("updating a missing document should fail");
+		} catch (final DocumentMissingException expected) {
+			// only upserts create documents
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class OperationMetricsIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void operationMetrics() throws Exception {
+		index(XContentFactory.jsonBuilder().startObject().field("rownum", 1).endObject());
+		refreshIndex();
+
+		final NodeTemplate template = new NodeTemplate(nodeTemplate.getNode(), nodeTemplate.getIndexName());
+		final OperationMetrics metrics = new OperationMetrics();
+		metrics.setSlowThresholdMillis(0);
+		template.addOperationInterceptor(metrics);
+
+		assertEquals("incorrect number of results", 1, template.search("rownum:1", 10).size());
+		assertEquals("incorrect number of results", 1, template.searchAsync("rownum:1", 10).actionGet().getHits()
+				.getTotalHits());
+		template.refreshIndex();
+		try {
+			template.search("rownum:[1 TO", 10);
+		} catch (final RuntimeException expected) {
+			// a malformed query fails on all shards
+		}
+
+		final Map<String, OperationMetrics.Snapshot> snapshot = metrics.snapshot();
+		assertEquals("incorrect number of searches", 3, snapshot.get(OperationInterceptor.SEARCH).getOperations());
+		assertEquals("incorrect number of failures", 1, snapshot.get(OperationInterceptor.SEARCH).getFailures());
+		assertEquals("incorrect number of admin operations", 1, snapshot.get(OperationInterceptor.INDICES_ADMIN)
+				.getOperations());
+		assertTrue("searches should report their took time", snapshot.get(OperationInterceptor.SEARCH).getTookMax() >= 0);
+		assertEquals("all operations are slow with a 0 threshold", 4, metrics.getSlowOperations());
+		assertTrue("missing latencies", metrics.getLatencies().containsKey(OperationInterceptor.SEARCH));
+
+		metrics.reset();
+		assertEquals("reset should clear the statistics", 0, metrics.getOperations());
+	}
+}
@@ -0,0 +1,50 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class ParallelScanIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void scanAllShards() {
+		final BulkIndexer indexer = BulkIndexer.builder(nodeTemplate).setConcurrentRequests(0).build();
+		for (int i = 0; i < 100; i++) {
+			indexer.index("log", String.valueOf(i), "{\"rownum\":" + i + "}");
+		}
+		indexer.close();
+		refreshIndex();
+
+		final ParallelScan scan = nodeTemplate.prepareParallelScan();
+		scan.setPageSize(5);
+		scan.setParallelism(2);
+		final ParallelScan.Result<Set<String>> result = scan.execute(new ParallelScan.SliceHandler<Set<String>>() {
+			@Override
+			public Set<String> handle(final ParallelScan.Slice slice, final Iterator<SearchHit> hits) {
+				final Set<String> ids = new HashSet<String>();
+				while (hits.hasNext()) {
+					ids.add(hits.next().getId());
+				}
+				return ids;
+			}
+		});
+
+		final Set<String> ids = new HashSet<String>();
+		for (final Set<String> sliceIds : result.getResults()) {
+			ids.addAll(sliceIds);
+		}
+		assertEquals("every shard should be a slice", scan.slices().size(), result.getResults().size());
+		assertEquals("incorrect number of scanned hits", 100, result.getTotalHits());
+		assertEquals("slices should not overlap", 100, ids.size());
+	}
+}
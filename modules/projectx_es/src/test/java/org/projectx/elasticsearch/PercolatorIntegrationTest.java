@@ -0,0 +1,44 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class PercolatorIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void percolate() throws Exception {
+		index(XContentFactory.jsonBuilder().startObject().field("level", "info").field("message", "started").endObject());
+
+		final Percolator percolator = nodeTemplate.preparePercolator("log");
+		percolator.setBatchSize(1);
+		percolator.setConcurrentRequests(2);
+		percolator.register("errors", "level:error");
+		percolator.register("timeouts", "message:timeout");
+
+		final List<List<String>> matches = percolator.percolate(Arrays.asList(
+				XContentFactory.jsonBuilder().startObject().field("level", "error").field("message", "timeout").endObject(),
+				XContentFactory.jsonBuilder().startObject().field("level", "info").field("message", "timeout").endObject(),
+				XContentFactory.jsonBuilder().startObject().field("level", "info").field("message", "done").endObject()));
+		assertEquals("incorrect number of results", 3, matches.size());
+		assertEquals("incorrect matches", new HashSet<String>(Arrays.asList("errors", "timeouts")),
+				new HashSet<String>(matches.get(0)));
+		assertEquals("incorrect matches", Arrays.asList("timeouts"), matches.get(1));
+		assertTrue("incorrect matches", matches.get(2).isEmpty());
+
+		assertTrue("registered query should be removed", percolator.unregister("errors"));
+		assertTrue("unregistered query should not match", percolator.percolate(
+				XContentFactory.jsonBuilder().startObject().field("level", "error").endObject()).isEmpty());
+	}
+}
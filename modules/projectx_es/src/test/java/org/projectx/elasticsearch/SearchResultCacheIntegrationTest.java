@@ -0,0 +1,71 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesResponse;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class SearchResultCacheIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void searchResultCache() throws Exception {
+		index(XContentFactory.jsonBuilder().startObject().field("rownum", 1).endObject());
+		refreshIndex();
+
+		final SearchResultCache cache = new SearchResultCache(nodeTemplate, 100, 60000);
+		try {
+			assertEquals("incorrect number of results", 1, cache.search("rownum:1", 10).size());
+			assertEquals("incorrect number of results", 1, cache.search("  rownum:1 ", 10).size());
+			assertEquals("normalized query should hit the cache", 1, cache.getHits());
+			assertEquals("incorrect number of misses", 1, cache.getMisses());
+
+			index(XContentFactory.jsonBuilder().startObject().field("rownum", 1).endObject());
+			refreshIndex();
+			assertEquals("refresh should invalidate the cache", 0, cache.getSize());
+			assertEquals("incorrect number of results", 2, cache.search("rownum:1", 10).size());
+		} finally {
+			cache.close();
+		}
+
+		refreshIndex();
+		assertEquals("a closed cache should not be notified", 1, cache.getInvalidations());
+	}
+
+	@Test
+	public void changesOfOtherIndicesKeepEntries() throws Exception {
+		index(XContentFactory.jsonBuilder().startObject().field("rownum", 1).endObject());
+		refreshIndex();
+
+		final String other = nodeTemplate.getIndexName() + "_other";
+		final String alias = nodeTemplate.getIndexName() + "_read";
+		nodeTemplate.createIndex(other, null, null, null);
+		final SearchResultCache cache = new SearchResultCache(nodeTemplate, 100, 60000);
+		try {
+			cache.search("rownum:1", 10);
+			nodeTemplate.refreshIndex(other);
+			assertEquals("a change of another index should keep the entries", 1, cache.getSize());
+			assertEquals("incorrect number of invalidations", 0, cache.getInvalidations());
+
+			nodeTemplate.executeGet(new NodeCallback<IndicesAliasesResponse>() {
+				@Override
+				public ActionFuture<IndicesAliasesResponse> execute(final IndicesAdminClient admin) {
+					return admin.aliases(Requests.indexAliasesRequest().addAlias(alias, nodeTemplate.getIndexName()));
+				}
+			});
+			nodeTemplate.refreshIndex(alias);
+			assertEquals("a change through an alias should invalidate the cache", 0, cache.getSize());
+		} finally {
+			cache.close();
+			nodeTemplate.deleteIndex(other);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.projectx.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:org/projectx/elasticsearch/applicationContext-elasticsearch.xml" })
+public class SuggesterIntegrationTest extends ElasticsearchNodeTempTestBase {
+
+	@Test
+	public void suggest() throws Exception {
+		nodeTemplate.executeGet(new NodeCallback<PutMappingResponse>() {
+			@Override
+			public ActionFuture<PutMappingResponse> execute(final IndicesAdminClient admin) {
+				try {
+					return admin.putMapping(Requests.putMappingRequest(nodeTemplate.getIndexName()).type("log")
+							.source(XContentFactory.jsonBuilder().startObject().startObject("log").startObject("properties")
+									.startObject("name").field("type", "completion").endObject().endObject().endObject()
+									.endObject()));
+				} catch (final IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		for (final String name : new String[] { "apple", "apricot", "avocado", "banana" }) {
+			index(XContentFactory.jsonBuilder().startObject().field("name", name).endObject());
+		}
+		refreshIndex();
+
+		final List<String> direct = nodeTemplate.suggest("name", "ap", 10);
+		assertEquals("incorrect suggestions", new HashSet<String>(Arrays.asList("apple", "apricot")),
+				new HashSet<String>(direct));
+
+		final Suggester suggester = nodeTemplate.prepareSuggester("name", 2, 60000);
+		try {
+			assertEquals("incorrect number of suggestions", 3, suggester.suggest("a").size());
+			assertEquals("incorrect number of suggestions", 1, suggester.suggest("a", 1).size());
+			assertEquals("short prefixes should be cached", 1, suggester.getHits());
+			assertEquals("incorrect suggestions", Arrays.asList("avocado"), suggester.suggest("avo"));
+			assertEquals("long prefixes should not be cached", 1, suggester.getSize());
+
+			suggester.refresh();
+			assertEquals("requested prefixes should be kept on refresh", 1, suggester.getSize());
+			suggester.refresh();
+			assertEquals("idle prefixes should be dropped on refresh", 0, suggester.getSize());
+		} finally {
+			suggester.close();
+		}
+	}
+}